@@ -0,0 +1,642 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/** A benchmarking class whose main program may be invoked as follows:
+ *      java gitlet.Benchmark NAME [ARGS...]
+ *  where NAME selects one of the benchmarks below. Each one works in a fresh
+ *  temporary directory, which it deletes afterwards, and prints its results
+ *  as a table on System.out. Like DumpObj, this is a development tool and
+ *  not one of the gitlet commands.
+ *
+ *  @author David Rambo
+ */
+public class Benchmark {
+
+    /** Seed for generated contents, so that runs are comparable. */
+    private static final long SEED = 61;
+
+    /** Words from which generated text files are made. */
+    private static final String[] WORDS = {
+        "commit", "blob", "branch", "merge", "split", "point", "head", "index",
+        "stage", "remove", "checkout", "reset", "log", "status", "find", "the",
+        "a", "of", "and", "to", "in", "is", "that", "for", "with", "file",
+    };
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            usage();
+        }
+        switch (args[0]) {
+            case "codec":
+                codec(args.length > 1 ? Integer.parseInt(args[1]) : 10000);
+                break;
+            case "daemon":
+                daemon(args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+                break;
+            case "delta":
+                delta(args.length > 1 ? Integer.parseInt(args[1]) : 200);
+                break;
+            case "format":
+                format(args.length > 1 ? Integer.parseInt(args[1]) : 100);
+                break;
+            case "merge":
+                merge(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+                break;
+            case "ids":
+                ids(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+                break;
+            case "renames":
+                renames(args.length > 1 ? Integer.parseInt(args[1]) : 5000);
+                break;
+            case "sha1":
+                sha1(args.length > 1 ? Integer.parseInt(args[1]) : 4096);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    /** Prints the available benchmarks and exits. */
+    private static void usage() {
+        System.out.println("Usage: java gitlet.Benchmark NAME [ARGS...]");
+        System.out.println("  codec [FILES]   bytes stored and checkout time per codec");
+        System.out.println("  daemon [COMMITS] sequential commits, a JVM per command vs the daemon");
+        System.out.println("  delta [EDITS]   pack size and checkout time of many versions of a file");
+        System.out.println("  format [FILES]  commit and index encoding, Java serialization vs binary");
+        System.out.println("  ids [COUNT]     heap used by COUNT IDs, as Strings vs ObjectIds");
+        System.out.println("  merge [LINES]   line diff and three-way merge time on large files");
+        System.out.println("  renames [FILES] rename detection time and accuracy on moved files");
+        System.out.println("  sha1 [BYTES]    Utils.sha1 and hex encoding, old path vs current");
+        System.exit(0);
+    }
+
+    /** Generates FILES text files of 1 to 16 KiB, then for each codec stores
+     * all of them as blobs in a fresh object directory and checks them all out
+     * again, first from loose objects and then after packing. Reports the bytes
+     * written to the store and the wall time of each phase. */
+    private static void codec(int files) {
+        Path tmp = tempDir();
+        try {
+            Path work = Files.createDirectories(tmp.resolve("work"));
+            List<File> sources = generateTextFiles(work, files);
+            long rawBytes = 0;
+            for (File file : sources) {
+                rawBytes += file.length();
+            }
+            System.out.printf("%d files, %d bytes%n", files, rawBytes);
+            System.out.printf("%-8s %14s %8s %10s %14s %14s%n", "codec", "bytes stored",
+                    "ratio", "add ms", "checkout ms", "packed ms");
+
+            for (Codec codec : new Codec[] {Codec.NONE, Codec.DEFLATE}) {
+                ObjectDirectory store = new ObjectDirectory(
+                        Files.createDirectories(tmp.resolve(codec.name())).toFile(), codec);
+                List<String> ids = new ArrayList<>();
+                long start = System.nanoTime();
+                for (File file : sources) {
+                    String id = Blob.hash(file);
+                    try (InputStream in = Files.newInputStream(file.toPath())) {
+                        store.write(id, in);
+                    }
+                    ids.add(id);
+                }
+                long addTime = System.nanoTime() - start;
+                long stored = 0;
+                for (String id : store.ids()) {
+                    stored += store.size(id);
+                }
+                long looseCheckout = checkoutAll(store, ids, tmp.resolve("out-" + codec.name()));
+                store.repack();
+                long packedCheckout = checkoutAll(store, ids, tmp.resolve("out-" + codec.name()));
+                System.out.printf("%-8s %14d %8.3f %10.1f %14.1f %14.1f%n", codec.name(), stored,
+                        (double) stored / rawBytes, addTime / 1e6, looseCheckout / 1e6,
+                        packedCheckout / 1e6);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deleteRecursively(tmp);
+        }
+    }
+
+    /** Stores EDITS + 1 versions of a 256 KiB text file, each changing a few
+     * lines of the one before, then packs them with deltas disabled and with
+     * the default window and depth. Reports the bytes stored loose and in the
+     * pack, the time to pack, and the time to read every version back from the
+     * pack twice, the second time with the delta bases cached. */
+    private static void delta(int edits) {
+        Path tmp = tempDir();
+        try {
+            Random random = new Random(SEED);
+            List<String> lines = new ArrayList<>();
+            int size = 0;
+            while (size < 256 * 1024) {
+                String line = randomLine(random);
+                lines.add(line);
+                size += line.length() + 1;
+            }
+            List<byte[]> versions = new ArrayList<>();
+            for (int v = 0; v <= edits; v += 1) {
+                for (int e = 0; v > 0 && e < 3; e += 1) {
+                    int at = random.nextInt(lines.size());
+                    switch (random.nextInt(3)) {
+                        case 0 -> lines.set(at, randomLine(random));
+                        case 1 -> lines.add(at, randomLine(random));
+                        default -> lines.remove(at);
+                    }
+                }
+                versions.add((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            System.out.printf("%d versions of about %d bytes%n", versions.size(), size);
+            System.out.printf("%-7s %12s %12s %10s %14s %14s%n", "window", "loose bytes",
+                    "pack bytes", "pack ms", "read cold ms", "read warm ms");
+
+            for (int window : new int[] {0, 10}) {
+                File dir = Files.createDirectories(tmp.resolve("w" + window)).toFile();
+                ObjectDirectory store = new ObjectDirectory(dir, Codec.DEFLATE);
+                List<String> ids = new ArrayList<>();
+                for (byte[] version : versions) {
+                    String id = Utils.sha1(version);
+                    store.write(id, version);
+                    ids.add(id);
+                }
+                long loose = 0;
+                for (String id : ids) {
+                    loose += store.size(id);
+                }
+                long start = System.nanoTime();
+                store.repack(window, 10);
+                long packTime = System.nanoTime() - start;
+                long packBytes = Utils.join(dir, "pack", PackFile.PACK_NAME).length();
+
+                ObjectDirectory packed = new ObjectDirectory(dir, Codec.DEFLATE);
+                long[] reads = new long[2];
+                for (int pass = 0; pass < 2; pass += 1) {
+                    start = System.nanoTime();
+                    for (int v = 0; v < ids.size(); v += 1) {
+                        if (!Arrays.equals(packed.read(ids.get(v)), versions.get(v))) {
+                            throw new IllegalStateException("version " + v + " differs");
+                        }
+                    }
+                    reads[pass] = System.nanoTime() - start;
+                }
+                System.out.printf("%-7d %12d %12d %10.1f %14.1f %14.1f%n", window, loose,
+                        packBytes, packTime / 1e6, reads[0] / 1e6, reads[1] / 1e6);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deleteRecursively(tmp);
+        }
+    }
+
+    /** Diffs and merges a text file of LINES lines against two versions of
+     * it, one with edits in its first half and one with as many edits in its
+     * second half, so that the merge is clean, for increasing numbers of
+     * edits; then against a version in which every line is new. Reports the
+     * mean time of a diff of one side and of the whole three-way merge. */
+    private static void merge(int lines) {
+        Random random = new Random(SEED);
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < lines; i += 1) {
+            base.add(randomLine(random) + "\n");
+        }
+        System.out.printf("%d lines%n", lines);
+        System.out.printf("%-9s %8s %10s %10s %10s%n", "edits", "hunks", "diff ms", "merge ms",
+                "conflicts");
+        for (int edits = 10; edits <= lines / 10; edits *= 10) {
+            List<String> ours = edit(base, 0, lines / 2, edits, random);
+            List<String> theirs = edit(base, lines / 2, lines, edits, random);
+            mergeRow(Integer.toString(edits), base, ours, theirs);
+        }
+        List<String> rewritten = new ArrayList<>();
+        for (int i = 0; i < lines; i += 1) {
+            rewritten.add(randomLine(random) + " rewritten\n");
+        }
+        mergeRow("rewrite", base, rewritten, edit(base, 0, lines, 10, random));
+    }
+
+    /** Prints the number of hunks in the diff of BASE and OURS, the mean time
+     * of that diff and of the merge of OURS and THEIRS, and whether the merge
+     * conflicts. */
+    private static void mergeRow(String edits, List<String> base, List<String> ours,
+                                 List<String> theirs) {
+        int hunks = Diff.diff(base, ours).size();
+        boolean conflicts = new Diff3(base, ours, theirs).hasConflicts();
+        long diffTime = time(() -> Diff.diff(base, ours));
+        long mergeTime = time(() -> new Diff3(base, ours, theirs));
+        System.out.printf("%-9s %8d %10.1f %10.1f %10s%n", edits, hunks, diffTime / 1e6,
+                mergeTime / 1e6, conflicts ? "yes" : "no");
+    }
+
+    /** Returns a copy of LINES with EDITS random lines between FROM and TO
+     * replaced, inserted or deleted. */
+    private static List<String> edit(List<String> lines, int from, int to, int edits,
+                                     Random random) {
+        List<String> result = new ArrayList<>(lines);
+        for (int e = 0; e < edits; e += 1) {
+            int at = from + random.nextInt(to - from - edits);
+            switch (random.nextInt(3)) {
+                case 0 -> result.set(at, randomLine(random) + "\n");
+                case 1 -> result.add(at, randomLine(random) + "\n");
+                default -> result.remove(at);
+            }
+        }
+        return result;
+    }
+
+    /** Makes COMMITS commits, each an add and a commit of a changed file, in
+     * a fresh repository for each way of running commands: a JVM running Main
+     * per command; a JVM running Client per command, sent to a daemon; and
+     * requests sent to a daemon from this process, as a script that talks to
+     * the socket itself would. Reports the total and per-command wall time. */
+    private static void daemon(int commits) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        Path tmp = tempDir();
+        try {
+            System.out.printf("%d commits, %d commands each way%n", commits, 2 * commits);
+            System.out.printf("%-8s %10s %12s%n", "mode", "total s", "ms/command");
+            for (String mode : new String[] {"main", "client", "socket"}) {
+                Path dir = Files.createDirectories(tmp.resolve(mode));
+                run(dir, java, "-cp", classpath, "gitlet.Main", "init");
+                Process daemon = null;
+                SocketChannel channel = null;
+                if (!mode.equals("main")) {
+                    daemon = new ProcessBuilder(java, "-cp", classpath, "gitlet.Main", "serve")
+                            .directory(dir.toFile()).inheritIO().start();
+                    Path socket = dir.resolve(Client.SOCKET);
+                    while ((channel = Client.connect(socket)) == null) {
+                        Thread.sleep(10);
+                    }
+                    channel.close();
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < commits; i += 1) {
+                    Files.writeString(dir.resolve("file.txt"), "version " + i + "\n");
+                    String[][] commands = {{"add", "file.txt"}, {"commit", "commit " + i}};
+                    for (String[] command : commands) {
+                        if (mode.equals("socket")) {
+                            try (SocketChannel c = Client.connect(dir.resolve(Client.SOCKET))) {
+                                Client.request(c, dir.toString(), command);
+                            }
+                        } else {
+                            List<String> argv = new ArrayList<>(List.of(java, "-cp", classpath,
+                                    mode.equals("main") ? "gitlet.Main" : "gitlet.Client"));
+                            argv.addAll(List.of(command));
+                            run(dir, argv.toArray(new String[0]));
+                        }
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                if (daemon != null) {
+                    run(dir, java, "-cp", classpath, "gitlet.Main", "serve", "--stop");
+                    daemon.waitFor();
+                }
+                System.out.printf("%-8s %10.1f %12.2f%n", mode, elapsed / 1e9,
+                        elapsed / 1e6 / (2 * commits));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deleteRecursively(tmp);
+        }
+    }
+
+    /** Runs the command COMMAND in DIR and waits for it to finish. */
+    private static void run(Path dir, String... command)
+        throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " failed");
+        }
+    }
+
+    /** Returns a line of 4 to 19 random words. */
+    private static String randomLine(Random random) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 4 + random.nextInt(16); i > 0; i -= 1) {
+            line.append(WORDS[random.nextInt(WORDS.length)]).append(i > 1 ? " " : "");
+        }
+        return line.toString();
+    }
+
+    /** Compares Java serialization with the binary formats on a commit and an
+     * index that each name FILES files (for a binary commit, its tree does): the encoded size, and the time per
+     * encode and decode after a warm-up. */
+    private static void format(int files) {
+        Random random = new Random(SEED);
+        HashMap<String, ObjectId> blobs = new HashMap<>();
+        Index index = new Index();
+        for (int i = 0; i < files; i += 1) {
+            String filename = "file" + i + ".txt";
+            ObjectId id = ObjectId.fromHex(Utils.sha1(Long.toString(random.nextLong())));
+            blobs.put(filename, id);
+            index.getAdditions().put(filename, id);
+        }
+        /* Serialized commits held every file; binary ones name a tree that does. */
+        Commit flatCommit = new Commit(Utils.sha1("commit"), Utils.sha1("parent"), null,
+                "a commit message", new Date(), null, blobs);
+        Tree tree = Tree.ofBlobs(blobs);
+        Commit commit = new Commit(Utils.sha1("commit"), Utils.sha1("parent"), null,
+                "a commit message", new Date(), Utils.sha1(tree.encode()), null);
+
+        System.out.printf("%d files%n", files);
+        System.out.printf("%-7s %-13s %10s %12s %12s%n", "object", "format", "bytes",
+                "encode us", "decode us");
+        formatRow("commit", "serialization", () -> Utils.serialize(flatCommit),
+                bytes -> Utils.deserialize(bytes, Commit.class));
+        formatRow("commit", "binary", commit::encode, Commit::decode);
+        formatRow("tree", "binary", tree::encode, Tree::decode);
+        formatRow("index", "serialization", () -> Utils.serialize(index),
+                bytes -> Utils.deserialize(bytes, Index.class));
+        formatRow("index", "binary", index::encode, Index::decode);
+    }
+
+    /** Prints the size of the bytes returned by ENCODER and the mean time of
+     * ENCODER and of DECODER applied to them, in microseconds. */
+    private static void formatRow(String object, String format, Supplier<byte[]> encoder,
+                                  Function<byte[], Object> decoder) {
+        byte[] bytes = encoder.get();
+        long encodeTime = time(() -> encoder.get());
+        long decodeTime = time(() -> decoder.apply(bytes));
+        System.out.printf("%-7s %-13s %10d %12.1f %12.1f%n", object, format, bytes.length,
+                encodeTime / 1e3, decodeTime / 1e3);
+    }
+
+    /** Compares the heap taken by COUNT random IDs held as hexadecimal
+     * Strings and as ObjectIds: as the values of a map from file names, as a
+     * commit's blobs are, and as a list, as a commit's history is. The file
+     * names are allocated first, so that only the IDs and the structure are
+     * counted; each String ID gets an array of its own, as one decoded from
+     * disk does. Reports the bytes per entry and the time to build each. */
+    private static void ids(int count) {
+        Random random = new Random(SEED);
+        String[] names = new String[count];
+        String[] hexIDs = new String[count];
+        for (int i = 0; i < count; i += 1) {
+            names[i] = "d" + i / 20 + "/f" + i + ".txt";
+            hexIDs[i] = Utils.sha1(Long.toString(random.nextLong()));
+        }
+        System.out.printf("%d IDs%n", count);
+        System.out.printf("%-24s %10s %10s %10s%n", "structure", "heap bytes", "per entry",
+                "build ms");
+        idsRow("HashMap<String,String>", count, () -> {
+            HashMap<String, String> map = new HashMap<>();
+            for (int i = 0; i < count; i += 1) {
+                map.put(names[i], new String(hexIDs[i].toCharArray()));
+            }
+            return map;
+        });
+        idsRow("HashMap<String,ObjectId>", count, () -> {
+            HashMap<String, ObjectId> map = new HashMap<>();
+            for (int i = 0; i < count; i += 1) {
+                map.put(names[i], ObjectId.fromHex(hexIDs[i]));
+            }
+            return map;
+        });
+        idsRow("ArrayList<String>", count, () -> {
+            ArrayList<String> list = new ArrayList<>();
+            for (int i = 0; i < count; i += 1) {
+                list.add(new String(hexIDs[i].toCharArray()));
+            }
+            return list;
+        });
+        idsRow("ArrayList<ObjectId>", count, () -> {
+            ArrayList<ObjectId> list = new ArrayList<>();
+            for (int i = 0; i < count; i += 1) {
+                list.add(ObjectId.fromHex(hexIDs[i]));
+            }
+            return list;
+        });
+    }
+
+    /** Prints the heap retained by the structure BUILD returns, per each of
+     * its COUNT entries, and the time BUILD took. */
+    private static void idsRow(String structure, int count, Supplier<Object> build) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Object result = build.get();
+        long elapsed = System.nanoTime() - start;
+        long bytes = usedHeap() - before;
+        System.out.printf("%-24s %10d %10.1f %10.1f%n", structure, bytes,
+                (double) bytes / count, elapsed / 1e6);
+        Reference.reachabilityFence(result);
+    }
+
+    /** Returns the bytes of heap in use after garbage collection settles. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i += 1) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /** Times Renames.detect on FILES deleted files of about 2 KiB and as
+     * many added ones, and on a tenth as many: a quarter of the added files
+     * are exact renames, a quarter have one line of ten changed, a quarter
+     * three of ten, and a quarter are unrelated. Reports the
+     * renames found, how many of them are right, and the time taken. */
+    private static void renames(int files) {
+        System.out.printf("%8s %10s %8s %8s %10s%n", "files", "expected", "found", "right",
+                "ms");
+        for (int n : new int[] {files / 10, files}) {
+            Random random = new Random(SEED);
+            HashMap<ObjectId, byte[]> contents = new HashMap<>();
+            HashMap<String, ObjectId> deleted = new HashMap<>();
+            HashMap<String, ObjectId> added = new HashMap<>();
+            for (int i = 0; i < n; i += 1) {
+                List<String> lines = new ArrayList<>();
+                for (int j = 0; j < 40; j += 1) {
+                    lines.add(randomLine(random) + " " + random.nextInt());
+                }
+                deleted.put("old/f" + i + ".txt", store(contents, lines));
+                int changed = i % 4 == 0 ? 0 : i % 4 == 1 ? 4 : i % 4 == 2 ? 12 : 40;
+                for (int j = 0; j < changed; j += 1) {
+                    lines.set(j * lines.size() / changed, randomLine(random) + " edited");
+                }
+                added.put("new/g" + i + ".txt", store(contents, lines));
+            }
+            long start = System.nanoTime();
+            List<Renames.Pair> pairs = Renames.detect(deleted, added, null, contents::get);
+            long elapsed = System.nanoTime() - start;
+            int right = 0;
+            for (Renames.Pair pair : pairs) {
+                String source = pair.source.substring("old/f".length());
+                right += pair.target.equals("new/g" + source) ? 1 : 0;
+            }
+            System.out.printf("%8d %10d %8d %8d %10.1f%n", n, n - n / 4, pairs.size(), right,
+                    elapsed / 1e6);
+        }
+    }
+
+    /** Adds the file of LINES to CONTENTS and returns its blob ID. */
+    private static ObjectId store(HashMap<ObjectId, byte[]> contents, List<String> lines) {
+        byte[] bytes = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        ObjectId id = ObjectId.fromHex(Utils.sha1((Object) bytes));
+        contents.put(id, bytes);
+        return id;
+    }
+
+    /** Compares the SHA-1 path Utils.sha1 used to take (a new MessageDigest
+     * per call, String.getBytes, hex through Formatter) with the current one
+     * on the values gitlet hashes: a commit's message and timestamp, a
+     * 40-character ID, and a blob of BYTES bytes; and the hex encoding of a
+     * digest on its own. Reports the time per call, twice: the first pass
+     * warms up the JIT compiler for the second, which is the one to read. */
+    private static void sha1(int bytes) {
+        Random random = new Random(SEED);
+        byte[] blob = new byte[bytes];
+        random.nextBytes(blob);
+        String message = randomLine(random);
+        String timestamp = new Date(0).toString();
+        String id = Utils.sha1(message);
+        byte[] digest = Utils.sha1Bytes(id);
+        if (!oldSha1(message, timestamp).equals(Utils.sha1(message, timestamp))
+                || !oldSha1(blob).equals(Utils.sha1(blob))) {
+            throw new IllegalStateException("old and new sha1 differ");
+        }
+
+        for (int pass = 0; pass < 2; pass += 1) {
+            System.out.printf("%s%n%-16s %10s %10s %8s%n", pass == 0 ? "warm-up" : "measured",
+                    "input", "old ns", "new ns", "speedup");
+            sha1Row("commit", () -> oldSha1(message, timestamp),
+                    () -> Utils.sha1(message, timestamp));
+            sha1Row("id", () -> oldSha1(id), () -> Utils.sha1(id));
+            sha1Row("blob " + bytes + " B", () -> oldSha1(blob), () -> Utils.sha1(blob));
+            sha1Row("hex only", () -> oldHex(digest), () -> Utils.sha1Hex(digest));
+        }
+    }
+
+    /** Prints the mean times of OLDPATH and NEWPATH and their ratio. */
+    private static void sha1Row(String input, Supplier<?> oldPath, Supplier<?> newPath) {
+        long oldTime = time(oldPath);
+        long newTime = time(newPath);
+        System.out.printf("%-16s %10d %10d %8.2f%n", input, oldTime, newTime,
+                (double) oldTime / newTime);
+    }
+
+    /** Utils.sha1 as it was. */
+    private static String oldSha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                if (val instanceof byte[]) {
+                    md.update((byte[]) val);
+                } else {
+                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return oldHex(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Hex encoding of a digest as Utils.sha1 did it. */
+    private static String oldHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Returns the mean time of a call to TASK in nanoseconds, measured over
+     * one second of calls after one second of warm-up. */
+    private static long time(Supplier<?> task) {
+        Object sink = null;
+        for (int phase = 0; phase < 2; phase += 1) {
+            long start = System.nanoTime();
+            long end = start + 1_000_000_000L;
+            long calls = 0;
+            long now;
+            do {
+                sink = task.get();
+                calls += 1;
+                now = System.nanoTime();
+            } while (now < end);
+            if (phase == 1) {
+                return sink == null ? -1 : (now - start) / calls;
+            }
+        }
+        return -1;
+    }
+
+    /** Writes each blob in IDS from STORE into a file in DIR, as checkout does,
+     * and returns the elapsed time in nanoseconds. */
+    private static long checkoutAll(ObjectStore store, List<String> ids, Path dir)
+        throws IOException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        for (int i = 0; i < ids.size(); i += 1) {
+            try (InputStream in = store.open(ids.get(i))) {
+                Files.copy(in, dir.resolve("f" + i), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Creates COUNT files of random words in DIR and returns them. */
+    private static List<File> generateTextFiles(Path dir, int count) throws IOException {
+        Random random = new Random(SEED);
+        List<File> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            int size = 1024 + random.nextInt(15 * 1024);
+            StringBuilder text = new StringBuilder(size + 16);
+            while (text.length() < size) {
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+                text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+            }
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+            result.add(file.toFile());
+        }
+        return result;
+    }
+
+    /** Returns a new temporary directory. */
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("gitlet-bench");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes DIR and everything beneath it. */
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
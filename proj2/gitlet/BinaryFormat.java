@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Helpers for the binary formats in which commits and the index are
+ * stored, which replaced Java serialization. Every file starts with a 4-byte
+ * magic number naming its type and a version byte, so that formats can change
+ * without breaking existing repositories. Strings are written as a length and
+ * UTF-8 bytes, and object IDs as their 20 raw bytes.
+ * <p>
+ * Files written by earlier versions of gitlet with Java serialization start
+ * with the serialization stream magic, 0xACED, which no binary format starts
+ * with, so both can be told apart and read.
+ *
+ *  @author David Rambo
+ */
+class BinaryFormat {
+    /** First two bytes of every Java serialization stream. */
+    private static final int SERIAL_MAGIC = 0xACED;
+
+    /** Writes the contents of a file to OUT. */
+    interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Reads an object from the contents of a file in IN. */
+    interface Decoder<T> {
+        T read(ByteBuffer in);
+    }
+
+    /** Returns the bytes written by ENCODER. */
+    static byte[] encode(Encoder encoder) {
+        long start = Trace.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.write(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.Op.ENCODE, start, bytes.size());
+        return bytes.toByteArray();
+    }
+
+    /** Returns the object read by DECODER from BYTES, the contents of a file
+     * of the kind described by WHAT. */
+    static <T> T decode(byte[] bytes, String what, Decoder<T> decoder) {
+        long start = Trace.start();
+        try {
+            T result = decoder.read(ByteBuffer.wrap(bytes));
+            Trace.end(Trace.Op.DECODE, start, bytes.length);
+            return result;
+        } catch (BufferUnderflowException excp) {
+            throw Utils.error("Truncated %s.", what);
+        }
+    }
+
+    /** Returns whether BYTES were written by Java serialization. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2
+                && ((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff)) == SERIAL_MAGIC;
+    }
+
+    /** Writes the header of a file of version VERSION of the format MAGIC. */
+    static void writeHeader(DataOutputStream out, int magic, int version)
+        throws IOException {
+        out.writeInt(magic);
+        out.writeByte(version);
+    }
+
+    /** Reads the header of a file of the format MAGIC, describing it as WHAT
+     * in errors, and returns its version, which must be at most VERSION. */
+    static int readHeader(ByteBuffer in, int magic, int version, String what) {
+        if (in.getInt() != magic) {
+            throw Utils.error("Corrupt %s.", what);
+        }
+        int fileVersion = in.get() & 0xff;
+        if (fileVersion > version) {
+            throw Utils.error("Unsupported %s version %d.", what, fileVersion);
+        }
+        return fileVersion;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    static void writeID(DataOutputStream out, String id) throws IOException {
+        out.write(Utils.sha1Bytes(id));
+    }
+
+    static String readID(ByteBuffer in) {
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        in.get(raw);
+        return Utils.sha1Hex(raw);
+    }
+
+    static void writeID(DataOutputStream out, ObjectId id) throws IOException {
+        out.write(id.toBytes());
+    }
+
+    static ObjectId readObjectId(ByteBuffer in) {
+        return ObjectId.read(in);
+    }
+
+    /** Returns the contents of the blob ID if BYTES are a Blob object
+     * serialized by a version of gitlet that stored blobs that way, or null
+     * if they are not. */
+    static byte[] legacyBlobContents(byte[] bytes, String id) {
+        if (!isSerialized(bytes)) {
+            return null;
+        }
+        try (ObjectInputStream in = new LegacyBlobInputStream(bytes)) {
+            Object obj = in.readObject();
+            if (obj instanceof LegacyBlob && id.equals(((LegacyBlob) obj).blobID)) {
+                return ((LegacyBlob) obj).contents.getBytes(StandardCharsets.UTF_8);
+            }
+            return null;
+        } catch (IOException | ClassNotFoundException excp) {
+            return null;
+        }
+    }
+
+    /** The fields of the Blob objects serialized by early versions of gitlet,
+     * which held a file's contents as a String. */
+    private static class LegacyBlob implements Serializable {
+        /** Never compared: LegacyBlobInputStream reads every serialized Blob
+         * with this class's descriptor. */
+        private static final long serialVersionUID = 1L;
+
+        private String blobID;
+        private String contents;
+    }
+
+    /** Reads serialized gitlet.Blob objects as LegacyBlobs. The two classes
+     * have the same fields, so the stream data can be read with LegacyBlob's
+     * class descriptor in place of the one it was written with. */
+    private static class LegacyBlobInputStream extends ObjectInputStream {
+        LegacyBlobInputStream(byte[] bytes) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (!desc.getName().equals("gitlet.Blob")) {
+                throw new InvalidClassException(desc.getName(), "not a serialized blob");
+            }
+            return ObjectStreamClass.lookup(LegacyBlob.class);
+        }
+    }
+}
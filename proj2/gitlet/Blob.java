@@ -1,26 +1,130 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
 /** Represents a gitlet blob.
- * When a file in the CWD is staged for addition, a copy of it is created
- * and named after the SHA-1 hash code of its contents. A Commit's
- * snapshot of the CWD associates filenames with these blobs by way of their
- * SHA-1 names. */
-public class Blob implements Serializable {
-    private String blobID;
-    private String contents;
-
-    public Blob(String contents) {
-        this.contents = contents;
-        this.blobID = Utils.sha1(contents);
+ * When a file in the CWD is staged for addition, a copy of its bytes is
+ * stored in the blob store, named after the SHA-1 hash code of its contents.
+ * A Commit's snapshot of the CWD associates filenames with these blobs by way
+ * of their SHA-1 names.
+ * <p>
+ * Contents are never held in memory as a whole: the hash is computed by
+ * reading the file through a FileChannel in fixed-size chunks, and storing
+ * and checking out copy the bytes as streams, so the memory used by add and
+ * checkout does not depend on the size of the file. Because the bytes are
+ * copied verbatim, binary files are stored faithfully. */
+public class Blob {
+    /** Size of the buffer used to read files while hashing. */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /** Contents of blobs read whole by this process, by ID, up to 32 MiB. */
+    private static final ObjectCache<byte[]> CACHE =
+            new ObjectCache<>("blobs", 32 << 20, contents -> contents.length);
+
+    /** Stores the contents of FILE in the blob store and returns their ID.
+     * The file is read once: the SHA-1 is computed as its bytes are copied,
+     * and the copy is named by it. */
+    public static String store(File file) {
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            String id = Repository.BLOB_STORE.write(Channels.newInputStream(in));
+            Trace.end(Trace.Op.SHA1, start, size);
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA-1 of the contents of FILE, which is the same as
+     * Utils.sha1 of its bytes, computed one chunk at a time. */
+    public static String hash(File file) {
+        long start = Trace.start();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = Utils.sha1Digest();
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            Trace.end(Trace.Op.SHA1, start, in.size());
+            return Utils.sha1Hex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of the blob with the given ID.
+     * Blobs stored as serialized Blob objects by earlier versions are
+     * converted to their contents as they are read. */
+    public static InputStream open(String blobID) {
+        InputStream in = new BufferedInputStream(Repository.BLOB_STORE.open(blobID));
+        try {
+            in.mark(2);
+            byte[] head = in.readNBytes(2);
+            in.reset();
+            if (!BinaryFormat.isSerialized(head)) {
+                return in;
+            }
+            byte[] bytes;
+            try (InputStream all = in) {
+                bytes = all.readAllBytes();
+            }
+            byte[] contents = BinaryFormat.legacyBlobContents(bytes, blobID);
+            return new ByteArrayInputStream(contents != null ? contents : bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the blob with the given ID, which are shared
+     * with other callers and must not be modified. */
+    public static byte[] read(String blobID) {
+        return CACHE.get(blobID, id -> {
+            try (InputStream in = open(id)) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+    }
+
+    /** Returns the contents of the blob with the given ID, as read does. */
+    public static byte[] read(ObjectId blobID) {
+        return read(blobID.toHex());
     }
 
-    public String getID() {
-        return this.blobID;
+    /** Writes the contents of the blob with the given ID to FILE, as writeTo
+     * does. */
+    public static void writeTo(ObjectId blobID, File file) {
+        writeTo(blobID.toHex(), file);
     }
 
-    public String getContents() {
-        return this.contents;
+    /** Writes the contents of the blob with the given ID to FILE, creating or
+     * overwriting it and any missing directories above it. */
+    public static void writeTo(String blobID, File file) {
+        file.getParentFile().mkdirs();
+        try (InputStream in = open(blobID);
+             FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReadableByteChannel source = Channels.newChannel(in);
+            long position = 0;
+            long n;
+            while ((n = out.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+                position += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 }
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** A thin client for the gitlet daemon (see Daemon), whose main program
+ *      java gitlet.Client ARGS
+ *  does what java gitlet.Main ARGS does, by sending ARGS to the daemon serving
+ *  the current directory and printing its reply. If no daemon is serving it,
+ *  the client runs the command itself. Until then it uses none of gitlet's
+ *  other classes, so it starts faster than Main.
+ * <p>
+ * A request is the client's working directory and its arguments, each as a
+ * length-prefixed UTF-8 string after the number of arguments. The reply is a
+ * status byte and the command's output as a length and bytes.
+ *
+ *  @author David Rambo
+ */
+public class Client {
+    /** The socket of the daemon, relative to the repository directory so that
+     * its path is short enough for a Unix domain socket wherever the
+     * repository is. */
+    static final Path SOCKET = Path.of(".gitlet", "daemon.sock");
+    /** Reply statuses: the command ran, whether or not it printed an error
+     * message; or it failed unexpectedly, and its output is the stack trace. */
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    public static void main(String... args) {
+        try (SocketChannel channel = connect(SOCKET)) {
+            if (channel == null) {
+                Main.main(args);
+                return;
+            }
+            Reply reply = request(channel, System.getProperty("user.dir"), args);
+            if (reply.status == OK) {
+                System.out.write(reply.output, 0, reply.output.length);
+                System.out.flush();
+            } else {
+                System.err.write(reply.output, 0, reply.output.length);
+                System.err.flush();
+                System.exit(1);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A daemon's reply to a request. */
+    static class Reply {
+        final byte status;
+        final byte[] output;
+
+        Reply(byte status, byte[] output) {
+            this.status = status;
+            this.output = output;
+        }
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET, or null if
+     * there is none. */
+    static SocketChannel connect(Path socket) throws IOException {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            return channel;
+        } catch (IOException excp) {
+            /* A socket left behind by a daemon that did not stop cleanly. */
+            channel.close();
+            return null;
+        }
+    }
+
+    /** Sends the command ARGS, run in the directory DIR, to the daemon over
+     * CHANNEL and returns its reply. */
+    static Reply request(SocketChannel channel, String dir, String... args)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeUTF(dir);
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        byte status = in.readByte();
+        byte[] output = new byte[in.readInt()];
+        in.readFully(output);
+        return new Reply(status, output);
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A compression scheme applied to objects as they are stored.
+ * <p>
+ * Every object written to an ObjectDirectory begins with a four-byte header:
+ * three magic bytes followed by the ID byte of the codec that encoded the
+ * rest of the object. Objects written before codecs existed have no header
+ * and are read back verbatim, so older repositories stay readable. Which
+ * codec new objects use is a per-repository setting (core.compression in
+ * .gitlet/config).
+ *
+ *  @author David Rambo
+ */
+public interface Codec {
+    /** Magic bytes that start the header of every encoded object. */
+    byte[] MAGIC = {0, 'g', 'l'};
+    /** Length of the header, including the codec ID byte. */
+    int HEADER_LENGTH = MAGIC.length + 1;
+
+    /** Stores objects as they are. */
+    Codec NONE = new Codec() {
+        @Override
+        public byte id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public InputStream encode(InputStream in) {
+            return in;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    };
+
+    /** Compresses objects with java.util.zip's DEFLATE implementation. */
+    Codec DEFLATE = new Codec() {
+        @Override
+        public byte id() {
+            return 1;
+        }
+
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream encode(InputStream in) {
+            return new DeflaterInputStream(in);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    /** The ID byte written into the header of objects encoded with this codec. */
+    byte id();
+
+    /** The name by which the codec is selected in the repository config. */
+    String name();
+
+    /** Returns a stream of the encoded form of the contents of IN. */
+    InputStream encode(InputStream in);
+
+    /** Returns a stream of the contents encoded in IN. */
+    InputStream decode(InputStream in);
+
+    /** Returns the codec called NAME. */
+    static Codec forName(String name) {
+        for (Codec codec : new Codec[] {NONE, DEFLATE}) {
+            if (codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown compression: %s.", name);
+    }
+
+    /** Returns the codec whose header ID byte is ID. */
+    static Codec forID(byte id) {
+        for (Codec codec : new Codec[] {NONE, DEFLATE}) {
+            if (codec.id() == id) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown compression ID: %d.", id);
+    }
+
+    /** Returns the stored form of the contents of IN: a header naming CODEC
+     * followed by the contents encoded with it. */
+    static InputStream wrap(Codec codec, InputStream in) {
+        byte[] header = new byte[HEADER_LENGTH];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = codec.id();
+        return new SequenceInputStream(new ByteArrayInputStream(header), codec.encode(in));
+    }
+
+    /** Returns the contents of the stored object IN, decoding it with the codec
+     * named in its header, or verbatim if it has none. */
+    static InputStream unwrap(InputStream in) {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        try {
+            buffered.mark(HEADER_LENGTH);
+            byte[] header = buffered.readNBytes(HEADER_LENGTH);
+            if (header.length == HEADER_LENGTH
+                    && header[0] == MAGIC[0] && header[1] == MAGIC[1] && header[2] == MAGIC[2]) {
+                return forID(header[MAGIC.length]).decode(buffered);
+            }
+            buffered.reset();
+            return buffered;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
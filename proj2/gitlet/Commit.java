@@ -1,6 +1,6 @@
 package gitlet;
 
-import java.io.File;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -8,14 +8,36 @@ import java.io.Serializable;
 
 /** Represents a gitlet commit object.
  * The snapshot of the working directory is recorded as a HashMap. Its key is a
- * String of the filename, and its value is a String of the corresponding blob's
- * filename.
+ * String of the filename, and its value is the ObjectId of the corresponding
+ * blob.
+ * <p>
+ * Commits are stored in a binary format (see BinaryFormat): the header, the
+ * raw commit ID, the timestamp in milliseconds, the number of parents and
+ * their raw IDs, the message, and the raw ID of the Tree of the snapshot.
+ * Version 1 of the format had the number of files followed by each filename
+ * and raw blob ID in place of the tree. Commits serialized by earlier
+ * versions are still read, which is why Commit remains Serializable.
  *
  *  @author David Rambo
  */
 public class Commit implements Serializable {
-    /** Map of blobs: <filename, blobID> */
-    private HashMap<String, String> blobs;
+    /** Keeps commits serialized by earlier versions readable. */
+    private static final long serialVersionUID = -3858735080631464493L;
+    /** Leading magic number of stored commits ("GCMT"). */
+    private static final int MAGIC = 0x47434d54;
+    private static final int VERSION = 2;
+    /** Format of dates in log entries. Creating one is far slower than
+     * formatting a date, so all entries share it; it is not thread-safe. */
+    private static final DateFormat DATE_FORMAT =
+            new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy ZZZ");
+    /** Commits loaded by this process, by ID. */
+    private static final ObjectCache<Commit> CACHE = new ObjectCache<>("commits", 4096);
+
+    /** Map of blobs: <filename, blobID>, read from the tree on first use. */
+    private HashMap<String, ObjectId> blobs;
+    /** ID of the tree of the working directory, or null in commits made
+     * before trees existed, which record only BLOBS. */
+    private String treeID;
     /** This commit's hash ID. */
     private final String commitID;
     /** Parent commit ID. This is the default one for commits. */
@@ -29,7 +51,8 @@ public class Commit implements Serializable {
 
     /** Constructor method for the initial (empty) commit. */
     public Commit() {
-        blobs = new HashMap<String, String>();
+        blobs = new HashMap<String, ObjectId>();
+        treeID = Tree.write(blobs);
         firstParentID = null;
         secondParentID = null;
         message = "initial commit";
@@ -39,7 +62,9 @@ public class Commit implements Serializable {
 
     /** Constructor for Commit objects.
      * By default, a commit has the same file contents as its parent. Files
-     * staged for addition and removal are the updates to the commit.
+     * staged for addition and removal are the updates to the commit, which are
+     * applied to the parent's tree, so only the trees of the directories they
+     * are in are rewritten.
      * @param message Message describing the commit's changes.
      * @param firstParent ID of the preceding commit.
      * @param secondParent ID of a second commit when merging.
@@ -48,58 +73,164 @@ public class Commit implements Serializable {
         this.firstParentID = firstParent;
         this.secondParentID = secondParent;
         this.message = message;
-        this.blobs = new HashMap<>();
         this.timestamp = new Date();
-        this.commitID = calcHash();
 
-        /* Clone parent's blobs. */
+        /* Start from the parent's tree. */
+        String parentTreeID = null;
         if (firstParentID != null) {
-            this.blobs = getBlobs(firstParentID);
+            parentTreeID = load(firstParentID).getTreeID();
         }
 
-        /* Commit files in staging area. */
+        /* Commit files in staging area and remove files staged for removal. */
         Index index = Index.load();
-        blobs.putAll(index.getAdditions());
+        this.treeID = Tree.update(parentTreeID, index.getAdditions(), index.getRemovals());
+        this.commitID = calcHash();
+    }
 
-        /* Remove files staged for removal. */
-        for (String filename : index.getRemovals()) {
-            blobs.remove(filename);
-        }
+    /** Creates a commit with every field given, as read from the store. Either
+     * the tree ID or the map of blobs is given, and the other is null. */
+    Commit(String commitID, String firstParent, String secondParent, String message,
+           Date timestamp, String treeID, HashMap<String, ObjectId> blobs) {
+        this.commitID = commitID;
+        this.firstParentID = firstParent;
+        this.secondParentID = secondParent;
+        this.message = message;
+        this.timestamp = timestamp;
+        this.treeID = treeID;
+        this.blobs = blobs;
     }
 
-    /** Calculates the sha-1 hash from the commit's message and timestamp.
-     * This serves as its ID and also filename. */
+    /** Calculates the sha-1 hash from the commit's message, timestamp, tree
+     * and parents, so that two commits made in the same second with the same
+     * message differ unless their contents and history do not. This serves
+     * as its ID and also filename. */
     private String calcHash() {
-        return Utils.sha1(message, timestamp.toString());
+        return Utils.sha1(message, timestamp.toString(), treeID,
+                Objects.toString(firstParentID, ""), Objects.toString(secondParentID, ""));
     }
 
-    /** Save the commit object to the file system. */
+    /** Save the commit object to the file system, add it to the commit graph and
+     * record its metadata in the commit log. A commit already saved is the
+     * same commit, and is left as it is. */
     public void save() {
-        File file = Utils.join(Repository.COMMITS_DIR, this.commitID);
-        Utils.writeObject(file, this);
+        CommitGraph graph = CommitGraph.load();
+        CommitLog.ensure();
+        if (graph.contains(this.commitID)) {
+            return;
+        }
+        Repository.COMMIT_STORE.write(this.commitID, encode());
+        graph.add(this);
+        CommitLog.append(this);
     }
 
-    /** Loads a commit object from the file system. */
+    /** Loads a commit object from the file system, or from the cache of
+     * commits already loaded. */
     public static Commit load(String commitID) {
-        File file = Utils.join(Repository.COMMITS_DIR, commitID);
-        if (!file.exists()) {
-            Main.exitMessage("No commit with that id exists.");
-        }
-        return Utils.readObject(file, Commit.class);
+        return CACHE.get(commitID, id -> {
+            if (!Repository.COMMIT_STORE.contains(id)) {
+                Main.exitMessage("No commit with that id exists.");
+            }
+            return decode(Repository.COMMIT_STORE.read(id));
+        });
     }
 
     /** Returns the HashMap of blobs belonging to the commit with the provided
      * commit ID. */
-    public static HashMap<String, String> getBlobs(String commitID) {
-        File file = Utils.join(Repository.COMMITS_DIR, commitID);
-        Commit commit = Utils.readObject(file, Commit.class);
-        return commit.getBlobs();
+    public static HashMap<String, ObjectId> getBlobs(String commitID) {
+        return load(commitID).getBlobs();
+    }
+
+    /** Returns this commit in its stored form. */
+    byte[] encode() {
+        return BinaryFormat.encode(out -> {
+            BinaryFormat.writeHeader(out, MAGIC, VERSION);
+            BinaryFormat.writeID(out, commitID);
+            out.writeLong(timestamp.getTime());
+            int parents = secondParentID != null ? 2 : firstParentID != null ? 1 : 0;
+            out.writeByte(parents);
+            if (parents > 0) {
+                BinaryFormat.writeID(out, firstParentID);
+            }
+            if (parents > 1) {
+                BinaryFormat.writeID(out, secondParentID);
+            }
+            BinaryFormat.writeString(out, message);
+            BinaryFormat.writeID(out, getTreeID());
+        });
+    }
+
+    /** Returns the commit stored as BYTES, in either the binary format or
+     * Java serialization. */
+    static Commit decode(byte[] bytes) {
+        if (BinaryFormat.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, Commit.class);
+        }
+        return BinaryFormat.decode(bytes, "commit", Commit::read);
+    }
+
+    /** Converts a commit serialized by an earlier version, whose blob IDs
+     * were Strings, as it is deserialized. */
+    @SuppressWarnings("unchecked")
+    private Object readResolve() {
+        if (blobs != null) {
+            HashMap<String, ObjectId> converted = new HashMap<>();
+            for (Map.Entry<String, ?> entry : ((Map<String, ?>) (Map<?, ?>) blobs).entrySet()) {
+                Object id = entry.getValue();
+                converted.put(entry.getKey(),
+                        id instanceof String ? ObjectId.fromHex((String) id) : (ObjectId) id);
+            }
+            blobs = converted;
+        }
+        return this;
+    }
+
+    /** Reads a commit in the binary format from IN. */
+    private static Commit read(ByteBuffer in) {
+        int version = BinaryFormat.readHeader(in, MAGIC, VERSION, "commit");
+        String id = BinaryFormat.readID(in);
+        Date timestamp = new Date(in.getLong());
+        int parents = in.get() & 0xff;
+        String first = parents > 0 ? BinaryFormat.readID(in) : null;
+        String second = parents > 1 ? BinaryFormat.readID(in) : null;
+        String message = BinaryFormat.readString(in);
+        if (version >= 2) {
+            return new Commit(id, first, second, message, timestamp,
+                    BinaryFormat.readID(in), null);
+        }
+        /* Version 1 listed every file instead of naming a tree. */
+        int count = in.getInt();
+        HashMap<String, ObjectId> blobs = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+        for (int i = 0; i < count; i += 1) {
+            String filename = BinaryFormat.readString(in);
+            blobs.put(filename, BinaryFormat.readObjectId(in));
+        }
+        return new Commit(id, first, second, message, timestamp, null, blobs);
     }
 
-    /** Returns blobs HashMap< key = filename, value = blobID >. */
-    public HashMap<String, String> getBlobs() {
+    /** Returns blobs HashMap< key = filename, value = blobID >. Filenames are
+     * paths relative to the working directory, separated by "/". */
+    public HashMap<String, ObjectId> getBlobs() {
+        if (this.blobs == null) {
+            this.blobs = Tree.flatten(treeID);
+        }
         return this.blobs;
     }
+
+    /** Returns the ID of the tree of this commit's snapshot as stored, or null
+     * for a commit made before trees existed, whose files only getBlobs
+     * lists. Unlike getTreeID, never stores anything. */
+    String storedTreeID() {
+        return this.treeID;
+    }
+
+    /** Returns the ID of the tree of this commit's snapshot. For a commit made
+     * before trees existed, the tree is built from its blobs and stored. */
+    public String getTreeID() {
+        if (this.treeID == null) {
+            this.treeID = Tree.write(this.blobs);
+        }
+        return this.treeID;
+    }
     
     public String getID() {
         return this.commitID;
@@ -122,48 +253,26 @@ public class Commit implements Serializable {
     }
 
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        String spacer = "===\n";
-        String name = String.format("commit %s", this.getID());
-        DateFormat df = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy ZZZ");
-        String time = df.format(getTimestamp());
-        String date = "\nDate: " + time + "\n";
-        return spacer + name + date + this.getMessage() + "\n";
-    }
-
-    /** Returns a LinkedList of the parent commit IDs of the specified commit.
-     * In order to accommodate merge commits, which have two parents, this method uses
-     * an intermediary queue to interlink divergent branch histories. */
-    public static LinkedList<String> getHistory(String headID) {
-        LinkedList<String> history = new LinkedList<>();
-        LinkedList<String> queue = new LinkedList<>();
-        queue.add(headID);
-
-        while (!queue.isEmpty()) {
-            String currentID = queue.pop();
-            history.add(currentID);
-            Commit currentCommit = load(currentID);
-            if (currentCommit.getParentID() != null) {
-                queue.add(currentCommit.getParentID());
-            }
-            if (currentCommit.getSecondParentID() != null) {
-                queue.add(currentCommit.getSecondParentID());
-            }
-        }
+        return logEntry(this.getID(), getTimestamp(), this.getMessage());
+    }
 
-        return history;
+    /** Returns the log entry of the commit with the given ID, timestamp and message. */
+    public static String logEntry(String commitID, Date timestamp, String message) {
+        String time;
+        synchronized (DATE_FORMAT) {
+            time = DATE_FORMAT.format(timestamp);
+        }
+        return "===\ncommit " + commitID + "\nDate: " + time + "\n" + message + "\n";
     }
 
-    /** Determines the latest common ancestor of the two specified commit histories. */
-    public static String findSplit(LinkedList<String> currentHistory,
-                                   LinkedList<String> givenHistory) {
-        for (String commitID : givenHistory) {
-            if (currentHistory.contains(commitID)) {
-                return commitID;
-            }
+    /** Determines a latest common ancestor of the two specified commits from the
+     * commit graph. */
+    public static ObjectId findSplit(String currentID, String givenID) {
+        ObjectId splitID = CommitGraph.load().mergeBase(currentID, givenID);
+        if (splitID == null) {
+            Main.exitMessage("No common ancestor found.");
         }
-        Main.exitMessage("No common ancestor found.");
-        return null;
+        return splitID;
     }
 
 }
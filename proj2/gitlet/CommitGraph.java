@@ -0,0 +1,370 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** The shape of the commit history, kept in .gitlet/commit-graph so that
+ * walking it never requires loading Commit objects, in the manner of git's
+ * commit-graph file.
+ * <p>
+ * Each commit has a position in the graph, and is recorded with the
+ * positions of its parents and its generation number: 1 for the initial
+ * commit, otherwise one more than the largest generation of its parents.
+ * A commit's ancestors all have smaller generation numbers, which lets
+ * ancestry queries stop as soon as they pass below the generation they are
+ * looking for.
+ * <p>
+ * The file is a header (magic, version) followed by one fixed-size record
+ * per commit in the order they were added, parents before children: the raw
+ * 20-byte commit ID, the positions of the first and second parents (-1 if
+ * absent), and the generation number. New commits are appended. A repository
+ * without the file has it rebuilt from its commit objects on first use.
+ * In memory, the IDs are kept raw too, as ObjectIds.
+ *
+ *  @author David Rambo
+ */
+public class CommitGraph {
+    /** Leading magic number of the file ("GCGR"). */
+    private static final int MAGIC = 0x47434752;
+    private static final int VERSION = 1;
+    /** Size of the header and of each record, in bytes. */
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = ObjectId.LENGTH + 3 * 4;
+
+    /** Marks used while painting the graph in mergeBase. */
+    private static final byte FROM_FIRST = 1;
+    private static final byte FROM_SECOND = 2;
+
+    /** The graph of the current repository, once loaded. */
+    private static CommitGraph loaded;
+
+    /** The commit-graph file this graph is kept in. */
+    private final File file;
+    /** Commit IDs by position. */
+    private ObjectId[] ids;
+    /** Positions of each commit's first and second parents, or -1. */
+    private int[] firstParents;
+    private int[] secondParents;
+    /** Generation number of each commit. */
+    private int[] generations;
+    /** Number of commits in the graph. */
+    private int size;
+    /** Position of each commit ID. */
+    private final HashMap<ObjectId, Integer> positions;
+
+    private CommitGraph(File file, int capacity) {
+        this.file = file;
+        ids = new ObjectId[capacity];
+        firstParents = new int[capacity];
+        secondParents = new int[capacity];
+        generations = new int[capacity];
+        positions = new HashMap<>(capacity * 2);
+    }
+
+    /** Returns the commit graph of the repository, reading it on first use and
+     * rebuilding it from the commit objects if the file does not exist. */
+    public static CommitGraph load() {
+        if (loaded == null) {
+            loaded = Journal.exists(Repository.COMMIT_GRAPH)
+                    ? read(Repository.COMMIT_GRAPH) : rebuild();
+        }
+        return loaded;
+    }
+
+    /** Forgets the loaded graph, so that the next load reads the file again. */
+    static void reset() {
+        loaded = null;
+    }
+
+    /** Returns the graph kept in the commit-graph file FILE of another
+     * repository, or null if it has none. */
+    static CommitGraph open(File file) {
+        return Journal.exists(file) ? read(file) : null;
+    }
+
+    /** Reads the graph from the commit-graph file FILE. */
+    private static CommitGraph read(File file) {
+        ByteBuffer buf = ByteBuffer.wrap(Journal.read(file));
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw Utils.error("Corrupt commit-graph file.");
+        }
+        int count = buf.remaining() / RECORD_SIZE;
+        CommitGraph graph = new CommitGraph(file, Math.max(count, 16));
+        for (int i = 0; i < count; i += 1) {
+            graph.append(ObjectId.read(buf), buf.getInt(), buf.getInt(), buf.getInt());
+        }
+        return graph;
+    }
+
+    /** Builds the graph from every stored commit and writes it to the
+     * commit-graph file. Only needed once, for repositories made before the
+     * file existed. */
+    private static CommitGraph rebuild() {
+        List<String> all = Repository.COMMIT_STORE.ids();
+        HashMap<String, String[]> parents = new HashMap<>();
+        for (String id : all) {
+            Commit commit = Commit.load(id);
+            parents.put(id, new String[] {commit.getParentID(), commit.getSecondParentID()});
+        }
+
+        /* Add commits in topological order: each after both of its parents. */
+        CommitGraph graph = new CommitGraph(Repository.COMMIT_GRAPH, Math.max(all.size(), 16));
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        for (String root : all) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (graph.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String parent : parents.get(id)) {
+                    if (parent != null && !graph.contains(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    graph.insert(id, parents.get(id)[0], parents.get(id)[1]);
+                }
+            }
+        }
+        graph.writeAll();
+        return graph;
+    }
+
+    /** Adds COMMIT to the graph and appends it to the commit-graph file. Its
+     * parents must already be in the graph. */
+    public void add(Commit commit) {
+        if (contains(commit.getID())) {
+            return;
+        }
+        int pos = insert(commit.getID(), commit.getParentID(), commit.getSecondParentID());
+        Journal.append(file, record(pos).array());
+    }
+
+    /** Adds the commit ID with the given parent IDs to the in-memory graph,
+     * returning its position. */
+    private int insert(String id, String firstParent, String secondParent) {
+        return insert(ObjectId.fromHex(id),
+                firstParent == null ? null : ObjectId.fromHex(firstParent),
+                secondParent == null ? null : ObjectId.fromHex(secondParent));
+    }
+
+    /** Adds the commit ID with the given parent IDs (null if absent) to the
+     * in-memory graph, returning its position. */
+    private int insert(ObjectId id, ObjectId firstParent, ObjectId secondParent) {
+        int first = firstParent == null ? -1 : position(firstParent);
+        int second = secondParent == null ? -1 : position(secondParent);
+        int generation = 1;
+        if (first >= 0) {
+            generation = Math.max(generation, generations[first] + 1);
+        }
+        if (second >= 0) {
+            generation = Math.max(generation, generations[second] + 1);
+        }
+        return append(id, first, second, generation);
+    }
+
+    /** Appends a commit to the in-memory graph, returning its position. */
+    private int append(ObjectId id, int first, int second, int generation) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            firstParents = Arrays.copyOf(firstParents, capacity);
+            secondParents = Arrays.copyOf(secondParents, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        ids[size] = id;
+        firstParents[size] = first;
+        secondParents[size] = second;
+        generations[size] = generation;
+        positions.put(id, size);
+        size += 1;
+        return size - 1;
+    }
+
+    /** Returns the file record of the commit at POS. */
+    private ByteBuffer record(int pos) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        ids[pos].write(buf);
+        buf.putInt(firstParents[pos]);
+        buf.putInt(secondParents[pos]);
+        buf.putInt(generations[pos]);
+        return buf;
+    }
+
+    /** Writes the whole graph to the commit-graph file, replacing it. */
+    private void writeAll() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + size * RECORD_SIZE);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        for (int pos = 0; pos < size; pos += 1) {
+            buf.put(record(pos).array());
+        }
+        Journal.write(file, buf.array());
+    }
+
+    /** Returns whether the commit ID is in the graph. */
+    public boolean contains(String id) {
+        return Utils.isUID(id) && positions.containsKey(ObjectId.fromHex(id));
+    }
+
+    /** Returns the position of the commit ID, which must be in the graph. */
+    private int position(String id) {
+        if (!Utils.isUID(id)) {
+            throw Utils.error("Commit %s is missing from the commit graph.", id);
+        }
+        return position(ObjectId.fromHex(id));
+    }
+
+    /** Returns the position of the commit ID, which must be in the graph. */
+    private int position(ObjectId id) {
+        Integer pos = positions.get(id);
+        if (pos == null) {
+            throw Utils.error("Commit %s is missing from the commit graph.", id);
+        }
+        return pos;
+    }
+
+    /** Returns the IDs of the parents of the commit ID. */
+    public List<String> getParentIDs(String id) {
+        int pos = position(id);
+        List<String> result = new ArrayList<>(2);
+        for (int parent : new int[] {firstParents[pos], secondParents[pos]}) {
+            if (parent >= 0) {
+                result.add(ids[parent].toHex());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ID of the first parent of the commit ID, or null. */
+    public String getParentID(String id) {
+        int parent = firstParents[position(id)];
+        return parent < 0 ? null : ids[parent].toHex();
+    }
+
+    /** Returns whether the commit ANCESTOR is reachable from the commit
+     * DESCENDANT (or is the same commit). Commits with a generation number at
+     * or below ANCESTOR's other than ANCESTOR itself are never expanded. */
+    public boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor);
+        int floor = generations[target];
+        boolean[] seen = new boolean[size];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(position(descendant));
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == target) {
+                return true;
+            }
+            if (seen[pos] || generations[pos] <= floor) {
+                continue;
+            }
+            seen[pos] = true;
+            for (int parent : new int[] {firstParents[pos], secondParents[pos]}) {
+                if (parent >= 0 && !seen[parent]) {
+                    stack.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the ID of a latest common ancestor of the commits FIRST and
+     * SECOND, or null if they have none.
+     * <p>
+     * Both commits' ancestors are painted in order of decreasing generation.
+     * The first commit reached from both sides is a common ancestor of which no
+     * other common ancestor can be a descendant, since such a descendant would
+     * have a larger generation number and have been reached earlier. */
+    public ObjectId mergeBase(String first, String second) {
+        byte[] marks = new byte[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                (a, b) -> Integer.compare(generations[b], generations[a]));
+        int a = position(first);
+        int b = position(second);
+        marks[a] |= FROM_FIRST;
+        marks[b] |= FROM_SECOND;
+        queue.add(a);
+        if (b != a) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            byte flags = (byte) (marks[pos] & (FROM_FIRST | FROM_SECOND));
+            if (flags == (FROM_FIRST | FROM_SECOND)) {
+                return ids[pos];
+            }
+            for (int parent : new int[] {firstParents[pos], secondParents[pos]}) {
+                if (parent >= 0 && (marks[parent] & flags) != flags) {
+                    boolean queued = marks[parent] != 0;
+                    marks[parent] |= flags;
+                    if (!queued) {
+                        queue.add(parent);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the IDs of the commits HEADS and all of their ancestors. */
+    public HashSet<String> reachable(Collection<String> heads) {
+        HashSet<String> result = new HashSet<>();
+        boolean[] seen = new boolean[size];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (String head : heads) {
+            stack.push(position(head));
+        }
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (seen[pos]) {
+                continue;
+            }
+            seen[pos] = true;
+            result.add(ids[pos].toHex());
+            for (int parent : new int[] {firstParents[pos], secondParents[pos]}) {
+                if (parent >= 0 && !seen[parent]) {
+                    stack.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Removes every commit not in LIVE from the graph and rewrites the
+     * commit-graph file. The parents of a commit in LIVE must be in it too. */
+    public void retain(Set<String> live) {
+        CommitGraph graph = new CommitGraph(file, Math.max(live.size(), 16));
+        for (int pos = 0; pos < size; pos += 1) {
+            if (live.contains(ids[pos].toHex())) {
+                graph.insert(ids[pos], firstParents[pos] < 0 ? null : ids[firstParents[pos]],
+                        secondParents[pos] < 0 ? null : ids[secondParents[pos]]);
+            }
+        }
+        graph.writeAll();
+        loaded = graph;
+    }
+
+    /** Returns the IDs of every commit in the graph, parents before children. */
+    public List<String> ids() {
+        List<String> result = new ArrayList<>(size);
+        for (int pos = 0; pos < size; pos += 1) {
+            result.add(ids[pos].toHex());
+        }
+        return result;
+    }
+}
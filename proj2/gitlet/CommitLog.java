@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/** An append-only log of the metadata of every commit ever made, kept in
+ * .gitlet/commit-log, together with an index from commit messages to commit
+ * IDs under .gitlet/messages. global-log reads the log sequentially and find
+ * reads a single index bucket, so neither has to load any Commit objects.
+ * <p>
+ * Each log record holds the raw 20-byte commit ID, the timestamp in
+ * milliseconds, the number of parents and their raw IDs, and the length and
+ * UTF-8 bytes of the message. The message index hashes each message with
+ * SHA-1 and appends a line "MESSAGEHASH COMMITID" to the bucket file named by
+ * the first two hex digits of the hash. A repository without the log has it
+ * and the index rebuilt from its commit objects on first use.
+ *
+ *  @author David Rambo
+ */
+public class CommitLog {
+    /** Number of leading hash characters naming a message index bucket. */
+    private static final int BUCKET_LENGTH = 2;
+
+    /** The metadata of one commit, as recorded in the log. */
+    public static class Entry {
+        private final String commitID;
+        private final Date timestamp;
+        private final List<String> parentIDs;
+        private final String message;
+
+        Entry(String commitID, Date timestamp, List<String> parentIDs, String message) {
+            this.commitID = commitID;
+            this.timestamp = timestamp;
+            this.parentIDs = parentIDs;
+            this.message = message;
+        }
+
+        public String getID() {
+            return commitID;
+        }
+
+        public Date getTimestamp() {
+            return timestamp;
+        }
+
+        public List<String> getParentIDs() {
+            return parentIDs;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /** Rebuilds the log and message index from the commit objects, in the
+     * order the commits were made, if the log does not exist yet. The rebuilt
+     * log is committed with the rest of the running command. */
+    public static void ensure() {
+        if (Journal.exists(Repository.COMMIT_LOG)) {
+            return;
+        }
+        Repository.MESSAGES_DIR.mkdir();
+        List<String> buckets = Utils.plainFilenamesIn(Repository.MESSAGES_DIR);
+        if (buckets != null) {
+            for (String name : buckets) {
+                Journal.delete(Utils.join(Repository.MESSAGES_DIR, name));
+            }
+        }
+        List<Commit> commits = new ArrayList<>();
+        for (String id : Repository.COMMIT_STORE.ids()) {
+            commits.add(Commit.load(id));
+        }
+        commits.sort(Comparator.comparing(Commit::getTimestamp).thenComparing(Commit::getID));
+        Journal.write(Repository.COMMIT_LOG, new byte[0]);
+        for (Commit commit : commits) {
+            append(commit);
+        }
+    }
+
+    /** Appends COMMIT's metadata to the log and its message to the index. */
+    public static void append(Commit commit) {
+        append(Repository.GITLET_DIR, entry(commit));
+    }
+
+    /** Appends COMMIT to the log and index of the repository whose .gitlet
+     * directory is GITLETDIR, if it has them; if not, they are rebuilt with
+     * COMMIT in them when first used. */
+    public static void appendTo(File gitletDir, Commit commit) {
+        if (Journal.exists(Utils.join(gitletDir, Repository.COMMIT_LOG.getName()))) {
+            append(gitletDir, entry(commit));
+        }
+    }
+
+    /** Returns the log entry of COMMIT. */
+    private static Entry entry(Commit commit) {
+        List<String> parents = new ArrayList<>(2);
+        if (commit.getParentID() != null) {
+            parents.add(commit.getParentID());
+        }
+        if (commit.getSecondParentID() != null) {
+            parents.add(commit.getSecondParentID());
+        }
+        return new Entry(commit.getID(), commit.getTimestamp(), parents, commit.getMessage());
+    }
+
+    /** Appends ENTRY to the log and its message to the index of the
+     * repository whose .gitlet directory is GITLETDIR. */
+    private static void append(File gitletDir, Entry entry) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.write(Utils.sha1Bytes(entry.getID()));
+            out.writeLong(entry.getTimestamp().getTime());
+            out.writeByte(entry.getParentIDs().size());
+            for (String parent : entry.getParentIDs()) {
+                out.write(Utils.sha1Bytes(parent));
+            }
+            byte[] message = entry.getMessage().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(message.length);
+            out.write(message);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.append(Utils.join(gitletDir, Repository.COMMIT_LOG.getName()),
+                record.toByteArray());
+
+        String line = Utils.sha1(entry.getMessage()) + " " + entry.getID() + "\n";
+        Journal.append(bucket(gitletDir, entry.getMessage()),
+                line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Rewrites the log and the message index to hold only the commits in
+     * LIVE, in the order they were made. */
+    public static void retain(Set<String> live) {
+        List<Entry> kept = new ArrayList<>();
+        forEach(entry -> {
+            if (live.contains(entry.getID())) {
+                kept.add(entry);
+            }
+        });
+        Journal.write(Repository.COMMIT_LOG, new byte[0]);
+        List<String> buckets = Utils.plainFilenamesIn(Repository.MESSAGES_DIR);
+        if (buckets != null) {
+            for (String name : buckets) {
+                Journal.delete(Utils.join(Repository.MESSAGES_DIR, name));
+            }
+        }
+        for (Entry entry : kept) {
+            append(Repository.GITLET_DIR, entry);
+        }
+    }
+
+    /** Calls VISITOR on the entry of every commit in the log, in the order the
+     * commits were made. A record cut short by an interrupted write ends the log. */
+    public static void forEach(Consumer<Entry> visitor) {
+        forEachWhile(entry -> {
+            visitor.accept(entry);
+            return true;
+        });
+    }
+
+    /** Calls VISITOR on the entry of every commit in the log, in the order the
+     * commits were made, until it returns false. */
+    public static void forEachWhile(Predicate<Entry> visitor) {
+        ensure();
+        /* A log rebuilt or appended to by the running command is not on
+         * disk yet. */
+        InputStream log;
+        try {
+            log = Journal.changes(Repository.COMMIT_LOG)
+                    ? new ByteArrayInputStream(Journal.read(Repository.COMMIT_LOG))
+                    : Files.newInputStream(Repository.COMMIT_LOG.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(log))) {
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            while (true) {
+                Entry entry;
+                try {
+                    in.readFully(raw);
+                    String id = Utils.sha1Hex(raw);
+                    Date timestamp = new Date(in.readLong());
+                    int count = in.readUnsignedByte();
+                    List<String> parents = new ArrayList<>(count);
+                    for (int i = 0; i < count; i += 1) {
+                        in.readFully(raw);
+                        parents.add(Utils.sha1Hex(raw));
+                    }
+                    byte[] message = new byte[in.readInt()];
+                    in.readFully(message);
+                    entry = new Entry(id, timestamp, parents,
+                            new String(message, StandardCharsets.UTF_8));
+                } catch (EOFException excp) {
+                    return;
+                }
+                if (!visitor.test(entry)) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the IDs of the commits whose message is exactly MESSAGE, in the
+     * order they were made. */
+    public static List<String> find(String message) {
+        ensure();
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        File bucket = bucket(Repository.GITLET_DIR, message);
+        if (!Journal.exists(bucket)) {
+            return new ArrayList<>(result);
+        }
+        String hash = Utils.sha1(message);
+        String lines = new String(Journal.read(bucket), StandardCharsets.UTF_8);
+        for (String line : lines.split("\n")) {
+            if (line.startsWith(hash)) {
+                result.add(line.substring(hash.length() + 1));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the message index bucket file holding MESSAGE in the
+     * repository whose .gitlet directory is GITLETDIR. */
+    private static File bucket(File gitletDir, String message) {
+        return Utils.join(gitletDir, Repository.MESSAGES_DIR.getName(),
+                Utils.sha1(message).substring(0, BUCKET_LENGTH));
+    }
+}
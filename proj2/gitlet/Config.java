@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/** Per-repository settings, kept in .gitlet/config as key=value lines.
+ * The file is read once per command (see Daemon); settings missing from it (or the file
+ * itself, in repositories created before it existed) take their defaults.
+ *
+ *  @author David Rambo
+ */
+public class Config {
+    /** Compression used for newly stored objects: "deflate" or "none". */
+    static final String COMPRESSION = "core.compression";
+    /** Number of threads that write files during checkout and reset. */
+    static final String CHECKOUT_WORKERS = "checkout.workers";
+    /** Number of preceding objects each object is tried as a delta against
+     * when packing; 0 disables deltas. */
+    static final String PACK_WINDOW = "pack.window";
+    /** Longest chain of deltas allowed in a pack. */
+    static final String PACK_DEPTH = "pack.depth";
+    /** Whether commands flush their changes to disk before finishing. */
+    static final String FSYNC = "core.fsync";
+    /** Whether status shows staged renames: "false", "true", or "copies"
+     * to show copies as well. Copies are looked for among all tracked files,
+     * so each of those is read when a new file matches none of them exactly. */
+    static final String STATUS_RENAMES = "status.renames";
+    /** Whether merge follows files renamed on one side: "true" or "false". */
+    static final String MERGE_RENAMES = "merge.renames";
+
+    /** The loaded settings, or null until first use. */
+    private static Properties settings;
+
+    /** Returns the settings, loading them on first use. */
+    private static synchronized Properties settings() {
+        if (settings == null) {
+            settings = new Properties();
+            if (Journal.exists(Repository.CONFIG)) {
+                try (Reader in = new StringReader(new String(Journal.read(Repository.CONFIG),
+                        StandardCharsets.UTF_8))) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+
+    /** Forgets the loaded settings, so that they are read again on next use. */
+    static synchronized void reset() {
+        settings = null;
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    public static String get(String key, String defaultValue) {
+        return settings().getProperty(key, defaultValue);
+    }
+
+    /** Sets KEY to VALUE and writes the settings back to the config file. */
+    public static void set(String key, String value) {
+        settings().setProperty(key, value);
+        write();
+    }
+
+    /** Removes KEY and writes the settings back to the config file. */
+    public static void unset(String key) {
+        settings().remove(key);
+        write();
+    }
+
+    /** Writes the settings to the config file. */
+    private static void write() {
+        StringWriter out = new StringWriter();
+        try {
+            settings().store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.write(Repository.CONFIG, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the codec with which new objects are stored. */
+    public static Codec compression() {
+        return Codec.forName(get(COMPRESSION, Codec.DEFLATE.name()));
+    }
+
+    /** Returns the number of checkout workers, by default one per processor. */
+    public static int checkoutWorkers() {
+        return Math.max(1, getInt(CHECKOUT_WORKERS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Returns the delta window used when packing, by default 10. */
+    public static int packWindow() {
+        return Math.max(0, getInt(PACK_WINDOW, 10));
+    }
+
+    /** Returns the longest delta chain allowed when packing, by default 10. */
+    public static int packDepth() {
+        return Math.max(0, getInt(PACK_DEPTH, 10));
+    }
+
+    /** Returns whether commands flush their changes to disk, by default true. */
+    public static boolean fsync() {
+        return Boolean.parseBoolean(get(FSYNC, "true").trim());
+    }
+
+    /** Returns what status shows of renames, by default nothing, since the
+     * sections it prints are fixed: "false", "true", or "copies". */
+    public static String statusRenames() {
+        return renames(STATUS_RENAMES, "false");
+    }
+
+    /** Returns whether merge follows renames, by default true. */
+    public static boolean mergeRenames() {
+        return !renames(MERGE_RENAMES, "true").equals("false");
+    }
+
+    /** Returns the rename setting KEY, or DEFAULTVALUE if it is not set. */
+    private static String renames(String key, String defaultValue) {
+        String value = get(key, defaultValue).trim();
+        if (!value.equals("false") && !value.equals("true") && !value.equals("copies")) {
+            throw Utils.error("Invalid %s: %s.", key, value);
+        }
+        return value;
+    }
+
+    /** Returns the integer value of KEY, or DEFAULTVALUE if it is not set. */
+    private static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid %s: %s.", key, value);
+        }
+    }
+}
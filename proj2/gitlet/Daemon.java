@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** The gitlet daemon, started by
+ *      java gitlet.Main serve
+ *  which runs the commands that clients (see Client) send it over a Unix
+ *  domain socket in .gitlet, one at a time, until
+ *      java gitlet.Main serve --stop
+ *  Running every command in one process saves starting a JVM for each, and
+ *  keeps the caches of loaded objects (see ObjectCache) and the compiled code
+ *  warm from one command to the next.
+ * <p>
+ * The daemon serves only the repository it was started in. Before each
+ * command it forgets what it read from the repository's mutable files (see
+ * Repository.refresh), so that commands run directly with Main while it runs
+ * see and make the same changes as ever.
+ *
+ *  @author David Rambo
+ */
+class Daemon {
+
+    /** Serves commands until asked to stop. */
+    static void serve() {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            Main.exitMessage("Not in an initialized Gitlet directory.");
+        }
+        try {
+            try (SocketChannel running = Client.connect(Client.SOCKET)) {
+                if (running != null) {
+                    Main.exitMessage("A gitlet daemon is already serving this repository.");
+                }
+            }
+            Files.deleteIfExists(Client.SOCKET);
+            try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(Client.SOCKET));
+                Client.SOCKET.toFile().deleteOnExit();
+                boolean serving = true;
+                while (serving) {
+                    try (SocketChannel channel = server.accept()) {
+                        serving = handle(channel);
+                    } catch (IOException excp) {
+                        /* The client went away; serve the next one. */
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(Client.SOCKET);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Asks the daemon serving this repository to stop. */
+    static void stop() {
+        try (SocketChannel channel = Client.connect(Client.SOCKET)) {
+            if (channel == null) {
+                Main.exitMessage("No gitlet daemon is serving this repository.");
+            }
+            Client.request(channel, Repository.CWD.getPath(), "serve", "--stop");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Runs the command requested over CHANNEL and replies with its output.
+     * Returns false if the request was to stop serving. */
+    private static boolean handle(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        String dir = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        byte status = Client.OK;
+        boolean serving = true;
+        if (!dir.equals(Repository.CWD.getPath())) {
+            out.println("The gitlet daemon serves " + Repository.CWD.getPath() + ".");
+        } else if (args.length > 0 && args[0].equals("serve")) {
+            serving = !(args.length == 2 && args[1].equals("--stop"));
+            if (serving) {
+                out.println("A gitlet daemon is already serving this repository.");
+            }
+        } else {
+            status = run(args, out);
+        }
+
+        DataOutputStream reply = new DataOutputStream(Channels.newOutputStream(channel));
+        reply.writeByte(status);
+        reply.writeInt(output.size());
+        output.writeTo(reply);
+        reply.flush();
+        return serving;
+    }
+
+    /** Runs the command ARGS with its output going to OUT, and returns the
+     * status of the reply. Unless the command's changes were committed, they
+     * are discarded, whatever was thrown, so that the next command does not
+     * inherit them. */
+    private static byte run(String[] args, PrintStream out) {
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        String[] command = Trace.begin(args);
+        boolean committed = false;
+        try {
+            Repository.refresh();
+            Main.run(command);
+            Journal.commit();
+            committed = true;
+            return Client.OK;
+        } catch (GitletException excp) {
+            Journal.commit();
+            committed = true;
+            out.println(excp.getMessage());
+            return Client.OK;
+        } catch (RuntimeException excp) {
+            excp.printStackTrace(out);
+            return Client.FAILED;
+        } finally {
+            if (!committed) {
+                Journal.abort();
+            }
+            RepositoryLock.release();
+            Trace.finish(out);
+            System.setOut(stdout);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Delta encoding of one version of an object against another, its base,
+ * as used for the objects in a pack.
+ * <p>
+ * A delta starts with the lengths of the base and of the result, followed by
+ * instructions that build the result from left to right: COPY an offset and
+ * length range of the base, or INSERT a length and that many literal bytes.
+ * All numbers are unsigned variable-length integers, seven bits per byte,
+ * least significant first, with the high bit set on every byte but the last.
+ * <p>
+ * Deltas are found as in git's diff-delta: every BLOCK-byte block of the base
+ * is entered into a hash table, and the result is scanned with a rolling hash
+ * for blocks present in the base. A match is extended as far as the bytes
+ * agree in both directions and becomes a COPY; bytes between matches become
+ * INSERTs.
+ *
+ *  @author David Rambo
+ */
+class Delta {
+    /** Instruction codes. */
+    private static final int COPY = 1;
+    private static final int INSERT = 2;
+    /** Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** PRIME to the power BLOCK - 1, to remove the first byte of a window. */
+    private static final int TOP_POWER = power(PRIME, BLOCK - 1);
+
+    /** Returns a delta that builds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 4 + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        /* Index the start of every whole block of the base by its hash. The
+         * table keeps the last block with each hash, offset by one so that 0
+         * means empty. */
+        int tableSize = Integer.highestOneBit(Math.max(base.length / BLOCK, 1) * 2);
+        int[] table = new int[tableSize];
+        for (int offset = 0; offset + BLOCK <= base.length; offset += BLOCK) {
+            table[hash(base, offset) & (tableSize - 1)] = offset + 1;
+        }
+
+        int insertStart = 0;
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            int candidate = table[h & (tableSize - 1)] - 1;
+            if (candidate >= 0 && Arrays.equals(base, candidate, candidate + BLOCK,
+                    target, pos, pos + BLOCK)) {
+                /* Extend the match backwards over pending literals, then forwards. */
+                int start = pos;
+                int baseStart = candidate;
+                while (start > insertStart && baseStart > 0
+                        && target[start - 1] == base[baseStart - 1]) {
+                    start -= 1;
+                    baseStart -= 1;
+                }
+                int end = pos + BLOCK;
+                int baseEnd = candidate + BLOCK;
+                while (end < target.length && baseEnd < base.length
+                        && target[end] == base[baseEnd]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                writeInsert(out, target, insertStart, start);
+                out.write(COPY);
+                writeVarint(out, baseStart);
+                writeVarint(out, end - start);
+                pos = end;
+                insertStart = end;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+                continue;
+            }
+            if (pos + BLOCK < target.length) {
+                h = (h - target[pos] * TOP_POWER) * PRIME + target[pos + BLOCK];
+            }
+            pos += 1;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA, which must have been created
+     * against BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int length = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int n = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, length, n);
+                length += n;
+            } else if (op == INSERT) {
+                int n = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, length, n);
+                pos[0] += n;
+                length += n;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (length != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Returns the length of the result of DELTA, read from its header. */
+    static int resultLength(byte[] delta) {
+        int[] pos = {0};
+        readVarint(delta, pos);
+        return readVarint(delta, pos);
+    }
+
+    /** Writes an INSERT of BYTES[START..END) to OUT, if it is not empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] bytes, int start,
+                                    int end) {
+        if (end > start) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(bytes, start, end - start);
+        }
+    }
+
+    /** Returns the hash of the BLOCK bytes of BYTES starting at OFFSET, equal
+     * to the rolling hash of the same bytes. */
+    private static int hash(byte[] bytes, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + BLOCK; i += 1) {
+            h = h * PRIME + bytes[i];
+        }
+        return h;
+    }
+
+    private static int power(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i += 1) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a varint from BYTES at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (pos[0] >= bytes.length) {
+                throw Utils.error("Corrupt delta.");
+            }
+            int b = bytes[pos[0]];
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw Utils.error("Corrupt delta.");
+    }
+}
@@ -0,0 +1,342 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line-level differences between two versions of a file, used by the diff
+ * command and by three-way merges (see Diff3).
+ * <p>
+ * Files are split into lines that keep their terminating newlines, decoded
+ * as ISO-8859-1 so that every byte survives the round trip. Each distinct line
+ * is numbered, and lines that occur in only one of the files are marked as
+ * changed at once, since they can never be part of a common subsequence. The
+ * remaining lines are compared with Myers' O(ND) algorithm in its linear-space,
+ * divide-and-conquer form, which finds a shortest edit script in time
+ * proportional to the lengths of the files times the number of differences.
+ * Dropping the unique lines first keeps D small in practice, so the time is
+ * close to linear even for large, heavily edited files.
+ *
+ *  @author David Rambo
+ */
+class Diff {
+    /** Lines of unchanged context around each hunk of a unified diff. */
+    private static final int CONTEXT = 3;
+
+    /** A region in which the lines A[aStart..aEnd) of the first file were
+     * replaced by the lines B[bStart..bEnd) of the second. Either range may be
+     * empty, for a pure insertion or deletion. */
+    static class Hunk {
+        final int aStart;
+        final int aEnd;
+        final int bStart;
+        final int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    /** Returns the lines of CONTENTS, each with its newline, if any. */
+    static List<String> lines(byte[] contents) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n') {
+                result.add(new String(contents, start, i + 1 - start, StandardCharsets.ISO_8859_1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length) {
+            result.add(new String(contents, start, contents.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return result;
+    }
+
+    /** Returns the bytes of LINES joined together, the inverse of lines. */
+    static byte[] join(List<String> lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String line : lines) {
+            out.writeBytes(line.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the hunks in which the lines B differ from the lines A, in
+     * order. */
+    static List<Hunk> diff(List<String> a, List<String> b) {
+        /* Number the lines, and count how often each number occurs in B. */
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[] x = number(a, numbers);
+        int[] y = number(b, numbers);
+        int[] inA = new int[numbers.size()];
+        int[] inB = new int[numbers.size()];
+        for (int n : x) {
+            inA[n] += 1;
+        }
+        for (int n : y) {
+            inB[n] += 1;
+        }
+
+        /* Lines found in only one file are changed; compare the rest. */
+        boolean[] changedA = new boolean[x.length];
+        boolean[] changedB = new boolean[y.length];
+        int[] keptA = keep(x, inB, changedA);
+        int[] keptB = keep(y, inA, changedB);
+        int[] xs = new int[keptA.length];
+        int[] ys = new int[keptB.length];
+        for (int i = 0; i < xs.length; i += 1) {
+            xs[i] = x[keptA[i]];
+        }
+        for (int j = 0; j < ys.length; j += 1) {
+            ys[j] = y[keptB[j]];
+        }
+        new Myers(xs, ys, keptA, keptB, changedA, changedB).compare(0, xs.length, 0, ys.length);
+
+        /* Unchanged lines pair up in order; collect the runs between them. */
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < x.length || j < y.length) {
+            if (i < x.length && j < y.length && !changedA[i] && !changedB[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < x.length && changedA[i]) {
+                i += 1;
+            }
+            while (j < y.length && changedB[j]) {
+                j += 1;
+            }
+            hunks.add(new Hunk(aStart, i, bStart, j));
+        }
+        return hunks;
+    }
+
+    /** Returns the numbers of LINES, numbering new lines in NUMBERS. */
+    private static int[] number(List<String> lines, HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer n = numbers.get(lines.get(i));
+            if (n == null) {
+                n = numbers.size();
+                numbers.put(lines.get(i), n);
+            }
+            result[i] = n;
+        }
+        return result;
+    }
+
+    /** Marks the lines of X whose numbers never occur in the other file,
+     * where they occur OTHER[n] times, as CHANGED, and returns the positions
+     * of the other lines. */
+    private static int[] keep(int[] x, int[] other, boolean[] changed) {
+        int[] kept = new int[x.length];
+        int count = 0;
+        for (int i = 0; i < x.length; i += 1) {
+            if (other[x[i]] == 0) {
+                changed[i] = true;
+            } else {
+                kept[count] = i;
+                count += 1;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(kept, 0, result, 0, count);
+        return result;
+    }
+
+    /** Myers' linear-space diff of the sequences X and Y, which marks the
+     * lines of the original files that are not in the longest common
+     * subsequence it finds. */
+    private static class Myers {
+        private final int[] x;
+        private final int[] y;
+        /** Positions in the original files of the elements of X and Y. */
+        private final int[] xPos;
+        private final int[] yPos;
+        private final boolean[] changedA;
+        private final boolean[] changedB;
+        /** Furthest reaching x on each diagonal going forwards, and y going
+         * backwards, offset by the number of diagonals. */
+        private final int[] forward;
+        private final int[] backward;
+        private final int offset;
+
+        Myers(int[] x, int[] y, int[] xPos, int[] yPos, boolean[] changedA,
+              boolean[] changedB) {
+            this.x = x;
+            this.y = y;
+            this.xPos = xPos;
+            this.yPos = yPos;
+            this.changedA = changedA;
+            this.changedB = changedB;
+            this.offset = x.length + y.length + 1;
+            this.forward = new int[2 * offset + 1];
+            this.backward = new int[2 * offset + 1];
+        }
+
+        /** Compares X[left..right) with Y[top..bottom). */
+        void compare(int left, int right, int top, int bottom) {
+            while (left < right && top < bottom && x[left] == y[top]) {
+                left += 1;
+                top += 1;
+            }
+            while (left < right && top < bottom && x[right - 1] == y[bottom - 1]) {
+                right -= 1;
+                bottom -= 1;
+            }
+            if (left == right) {
+                for (int j = top; j < bottom; j += 1) {
+                    changedB[yPos[j]] = true;
+                }
+            } else if (top == bottom) {
+                for (int i = left; i < right; i += 1) {
+                    changedA[xPos[i]] = true;
+                }
+            } else {
+                int[] snake = middleSnake(left, right, top, bottom);
+                compare(left, snake[0], top, snake[1]);
+                compare(snake[2], right, snake[3], bottom);
+            }
+        }
+
+        /** Returns the start and end points {x1, y1, x2, y2} of the middle
+         * snake of a shortest edit script for X[left..right) and
+         * Y[top..bottom), whose first and last elements differ. Searches
+         * forwards from the top left and backwards from the bottom right
+         * until the two searches overlap on some diagonal. */
+        private int[] middleSnake(int left, int right, int top, int bottom) {
+            int width = right - left;
+            int height = bottom - top;
+            int delta = width - height;
+            boolean odd = (delta & 1) != 0;
+            int max = (width + height + 1) / 2;
+            forward[offset + 1] = left;
+            backward[offset + 1] = bottom;
+
+            for (int d = 0; d <= max; d += 1) {
+                /* Diagonals k = x - y, relative to the top left corner. */
+                for (int k = d; k >= -d; k -= 2) {
+                    int c = k - delta;
+                    int px;
+                    int xs;
+                    if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                        px = forward[offset + k + 1];
+                        xs = px;
+                    } else {
+                        px = forward[offset + k - 1];
+                        xs = px + 1;
+                    }
+                    int ys = top + (xs - left) - k;
+                    int xe = xs;
+                    int ye = ys;
+                    while (xe < right && ye < bottom && x[xe] == y[ye]) {
+                        xe += 1;
+                        ye += 1;
+                    }
+                    forward[offset + k] = xe;
+                    if (odd && c >= -(d - 1) && c <= d - 1 && ye >= backward[offset + c]) {
+                        return new int[] {xs, ys, xe, ye};
+                    }
+                }
+                /* Diagonals c = x - y, relative to the bottom right corner. */
+                for (int c = d; c >= -d; c -= 2) {
+                    int k = c + delta;
+                    int py;
+                    int ys;
+                    if (c == -d || (c != d && backward[offset + c - 1] > backward[offset + c + 1])) {
+                        py = backward[offset + c + 1];
+                        ys = py;
+                    } else {
+                        py = backward[offset + c - 1];
+                        ys = py - 1;
+                    }
+                    int xs = left + (ys - top) + k;
+                    int xe = xs;
+                    int ye = ys;
+                    while (xe > left && ye > top && x[xe - 1] == y[ye - 1]) {
+                        xe -= 1;
+                        ye -= 1;
+                    }
+                    backward[offset + c] = ye;
+                    if (!odd && k >= -d && k <= d && xe <= forward[offset + k]) {
+                        return new int[] {xe, ye, xs, ys};
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+    }
+
+    /** Returns a unified diff of the lines A, named NAMEA, against the lines
+     * B, named NAMEB, with HUNKS = diff(A, B); or an empty array if they are
+     * the same. */
+    static byte[] unified(String nameA, List<String> a, String nameB, List<String> b,
+                          List<Hunk> hunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (hunks.isEmpty()) {
+            return out.toByteArray();
+        }
+        write(out, "--- " + nameA + "\n");
+        write(out, "+++ " + nameB + "\n");
+        int h = 0;
+        while (h < hunks.size()) {
+            /* Join hunks whose contexts would overlap into one. */
+            int last = h;
+            while (last + 1 < hunks.size()
+                    && hunks.get(last + 1).aStart - hunks.get(last).aEnd <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Hunk first = hunks.get(h);
+            int aFrom = Math.max(0, first.aStart - CONTEXT);
+            int bFrom = first.bStart - (first.aStart - aFrom);
+            int aTo = Math.min(a.size(), hunks.get(last).aEnd + CONTEXT);
+            int bTo = hunks.get(last).bEnd + (aTo - hunks.get(last).aEnd);
+            write(out, String.format("@@ -%s +%s @@\n", range(aFrom, aTo), range(bFrom, bTo)));
+            int i = aFrom;
+            for (int n = h; n <= last; n += 1) {
+                Hunk hunk = hunks.get(n);
+                writeLines(out, " ", a, i, hunk.aStart);
+                writeLines(out, "-", a, hunk.aStart, hunk.aEnd);
+                writeLines(out, "+", b, hunk.bStart, hunk.bEnd);
+                i = hunk.aEnd;
+            }
+            writeLines(out, " ", a, i, aTo);
+            h = last + 1;
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the range of lines [FROM..TO) as a unified diff shows it. */
+    private static String range(int from, int to) {
+        int count = to - from;
+        return count == 1 ? Integer.toString(from + 1)
+                : (count == 0 ? from : from + 1) + "," + count;
+    }
+
+    /** Writes LINES[FROM..TO) to OUT, each after PREFIX. */
+    private static void writeLines(ByteArrayOutputStream out, String prefix, List<String> lines,
+                                   int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            String line = lines.get(i);
+            write(out, prefix + line);
+            if (!line.endsWith("\n")) {
+                write(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, String s) {
+        out.writeBytes(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A three-way merge of the lines of two versions of a file, OURS and THEIRS,
+ * that descend from a common BASE, as done by diff3 and git's merge-file.
+ * <p>
+ * Both versions are diffed against the base (see Diff). Hunks of the two
+ * diffs that overlap or touch in the base are grouped together; a group
+ * changed on one side only takes that side's lines, and a group changed the
+ * same way on both sides takes either. Any other group is a conflict, written
+ * between the same markers as a whole-file conflict. Lines outside every group
+ * are the same in all three versions and are copied from the base.
+ *
+ *  @author David Rambo
+ */
+class Diff3 {
+    private static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    private static final String SEPARATOR = "=======\n";
+    private static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** The merged lines. */
+    private final List<String> result = new ArrayList<>();
+    /** The number of conflicting regions in the result. */
+    private int conflicts;
+
+    /** Merges the lines OURS and THEIRS, which descend from the lines BASE. */
+    Diff3(List<String> base, List<String> ours, List<String> theirs) {
+        List<Diff.Hunk> oursHunks = Diff.diff(base, ours);
+        List<Diff.Hunk> theirsHunks = Diff.diff(base, theirs);
+        int o = 0;
+        int t = 0;
+        /* Lines of the base before BASEPOS have been merged. */
+        int basePos = 0;
+        while (o < oursHunks.size() || t < theirsHunks.size()) {
+            /* Start a group at the hunk that comes first in the base, then add
+             * any hunk of either side that overlaps or touches the group. */
+            int lo;
+            int hi;
+            int oFirst = o;
+            int tFirst = t;
+            if (t == theirsHunks.size()
+                    || (o < oursHunks.size()
+                    && oursHunks.get(o).aStart <= theirsHunks.get(t).aStart)) {
+                lo = oursHunks.get(o).aStart;
+                hi = oursHunks.get(o).aEnd;
+                o += 1;
+            } else {
+                lo = theirsHunks.get(t).aStart;
+                hi = theirsHunks.get(t).aEnd;
+                t += 1;
+            }
+            while (true) {
+                if (o < oursHunks.size() && oursHunks.get(o).aStart <= hi) {
+                    hi = Math.max(hi, oursHunks.get(o).aEnd);
+                    o += 1;
+                } else if (t < theirsHunks.size() && theirsHunks.get(t).aStart <= hi) {
+                    hi = Math.max(hi, theirsHunks.get(t).aEnd);
+                    t += 1;
+                } else {
+                    break;
+                }
+            }
+
+            result.addAll(base.subList(basePos, lo));
+            List<String> oursLines = side(base, ours, oursHunks, oFirst, o, lo, hi);
+            List<String> theirsLines = side(base, theirs, theirsHunks, tFirst, t, lo, hi);
+            if (o == oFirst) {
+                result.addAll(theirsLines);
+            } else if (t == tFirst || oursLines.equals(theirsLines)) {
+                result.addAll(oursLines);
+            } else {
+                result.add(OURS_MARKER);
+                result.addAll(oursLines);
+                result.add(SEPARATOR);
+                result.addAll(theirsLines);
+                result.add(THEIRS_MARKER);
+                conflicts += 1;
+            }
+            basePos = hi;
+        }
+        result.addAll(base.subList(basePos, base.size()));
+    }
+
+    /** Returns the lines of the version LINES that correspond to BASE[LO..HI),
+     * given that HUNKS[FIRST..END) are its hunks within that range. */
+    private static List<String> side(List<String> base, List<String> lines,
+                                     List<Diff.Hunk> hunks, int first, int end,
+                                     int lo, int hi) {
+        if (first == end) {
+            return base.subList(lo, hi);
+        }
+        Diff.Hunk head = hunks.get(first);
+        Diff.Hunk tail = hunks.get(end - 1);
+        return lines.subList(head.bStart - (head.aStart - lo), tail.bEnd + (hi - tail.aEnd));
+    }
+
+    /** Returns the merged lines, with conflict markers around conflicts. */
+    List<String> result() {
+        return result;
+    }
+
+    /** Returns whether any region of the merge conflicts. */
+    boolean hasConflicts() {
+        return conflicts > 0;
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/** The stat data of a working file (size, modification time and inode),
+ * recorded in the Index together with the ID of the blob the file hashed to
+ * at that time. If a file's stat data still matches its entry, its contents
+ * are assumed unchanged and it need not be read again, as with git's index.
+ * <p>
+ * A file modified within the timestamp granularity of the file system right
+ * after its entry was recorded could keep the same stat data, so entries whose
+ * modification time is too close to the time they were recorded are "racy"
+ * and never trusted.
+ *
+ *  @author David Rambo
+ */
+public class FileStat implements Serializable {
+    /** Keeps indexes serialized by earlier versions readable. */
+    private static final long serialVersionUID = 5377882798652264061L;
+    /** Modification times this close (in milliseconds) to the time an entry
+     * was recorded make it racy. Covers file systems with 2-second mtimes. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** Size of the file in bytes. */
+    private final long size;
+    /** Last-modified time of the file, in nanoseconds since the epoch. */
+    private final long mtime;
+    /** The file system's key for the file (device and inode on Unix), or null. */
+    private final String inode;
+    /** Time the entry was recorded, in milliseconds since the epoch. */
+    private long recorded;
+    /** ID of the blob the file's contents hashed to. */
+    private transient ObjectId id;
+    /** The blob ID in hexadecimal, as earlier versions serialized it. Only
+     * read, and converted to ID by readResolve. */
+    private String blobID;
+
+    private FileStat(long size, long mtime, String inode, long recorded, ObjectId blobID) {
+        this.size = size;
+        this.mtime = mtime;
+        this.inode = inode;
+        this.recorded = recorded;
+        this.id = blobID;
+    }
+
+    private FileStat(BasicFileAttributes attrs) {
+        this.size = attrs.size();
+        this.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        this.inode = attrs.fileKey() == null ? null : attrs.fileKey().toString();
+    }
+
+    /** Returns the current stat data of FILE, or null if it does not exist. */
+    public static FileStat of(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return attrs.isRegularFile() ? new FileStat(attrs) : null;
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Marks this stat data as describing a file whose contents are the blob
+     * BLOBID, as of now. */
+    void record(ObjectId blobID) {
+        this.id = blobID;
+        this.recorded = System.currentTimeMillis();
+    }
+
+    /** Writes this entry to OUT in the index's binary format. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(size);
+        out.writeLong(mtime);
+        out.writeBoolean(inode != null);
+        if (inode != null) {
+            BinaryFormat.writeString(out, inode);
+        }
+        out.writeLong(recorded);
+        BinaryFormat.writeID(out, id);
+    }
+
+    /** Reads an entry written by write from IN. */
+    static FileStat read(ByteBuffer in) {
+        long size = in.getLong();
+        long mtime = in.getLong();
+        String inode = in.get() != 0 ? BinaryFormat.readString(in) : null;
+        long recorded = in.getLong();
+        return new FileStat(size, mtime, inode, recorded, BinaryFormat.readObjectId(in));
+    }
+
+    /** Converts an entry serialized by an earlier version, whose blob ID was
+     * a String, as it is deserialized. */
+    private Object readResolve() {
+        if (id == null && blobID != null) {
+            id = ObjectId.fromHex(blobID);
+            blobID = null;
+        }
+        return this;
+    }
+
+    /** Returns the ID of the blob recorded with this entry. */
+    public ObjectId getBlobID() {
+        return id;
+    }
+
+    /** Returns whether CURRENT, freshly read from the file system, shows the
+     * file unchanged since this entry was recorded. */
+    public boolean matches(FileStat current) {
+        return current != null
+                && size == current.size
+                && mtime == current.mtime
+                && Objects.equals(inode, current.inode)
+                && !isRacy();
+    }
+
+    /** Returns whether the file may have been modified so soon after this
+     * entry was recorded that its stat data would not show it. */
+    boolean isRacy() {
+        return mtime / 1_000_000 >= recorded - RACY_WINDOW;
+    }
+}
@@ -3,23 +3,43 @@ package gitlet;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.io.Serializable;
 
 /** Handles Gitlet's staging area with a HashMap of filenames and their blob
  * objects (staged for addition) and a HashSet of filenames (staged for removal).
+ * It also caches the stat data of working files (see FileStat), so that
+ * unchanged files do not have to be re-read and hashed to tell that they are
+ * unchanged.
+ * <p>
+ * The index file is in a binary format (see BinaryFormat): the header, then
+ * the additions as filenames and raw blob IDs, the removals, and the stat
+ * entries, each preceded by its count. An index serialized by an earlier
+ * version is still read, and is rewritten in the binary format when saved.
  */
 public class Index implements Serializable {
+    /** Keeps indexes written before the stat cache existed readable. */
+    private static final long serialVersionUID = -2360509032108196932L;
+    /** Leading magic number of the index file ("GINX"). */
+    private static final int MAGIC = 0x47494e58;
+    private static final int VERSION = 1;
+
     // <filename, blobID> files staged for addition
-    HashMap<String, String> additions;
+    HashMap<String, ObjectId> additions;
     HashSet<String> removals;
+    // <filename, stat data> of working files as last hashed or checked out
+    HashMap<String, FileStat> stats;
+    /** Whether the stat cache changed since the index was loaded. */
+    private transient boolean statsChanged;
 
     /** Constructor method for the Index class. */
     public Index() {
-        additions = new HashMap<String, String>();
+        additions = new HashMap<String, ObjectId>();
         removals = new HashSet<String>();
+        stats = new HashMap<String, FileStat>();
     }
 
-    public HashMap<String, String> getAdditions() {
+    public HashMap<String, ObjectId> getAdditions() {
         return additions;
     }
 
@@ -27,11 +47,87 @@ public class Index implements Serializable {
         return removals;
     }
 
+    private HashMap<String, FileStat> getStats() {
+        if (stats == null) {
+            stats = new HashMap<>();
+        }
+        return stats;
+    }
+
+    /** Returns the ID of the blob that the working file FILE, named FILENAME,
+     * currently hashes to, or null if it does not exist. If the file's stat data
+     * matches the cache, the recorded ID is returned without reading the file;
+     * otherwise the file is hashed and the cache updated. */
+    public ObjectId currentBlobID(String filename, File file) {
+        FileStat current = FileStat.of(file);
+        if (current == null) {
+            return null;
+        }
+        FileStat cached;
+        synchronized (this) {
+            cached = getStats().get(filename);
+        }
+        if (cached != null && cached.matches(current)) {
+            return cached.getBlobID();
+        }
+        ObjectId blobID = ObjectId.fromHex(Blob.hash(file));
+        current.record(blobID);
+        synchronized (this) {
+            getStats().put(filename, current);
+            statsChanged = true;
+        }
+        return blobID;
+    }
+
+    /** Returns the ID of the blob that the working file FILE, named FILENAME,
+     * currently holds, or null if it does not exist, making sure the blob is
+     * stored. If the file's stat data matches the cache and the blob is
+     * stored, the file is not read; otherwise it is read once, hashed as it is
+     * copied into the blob store (see Blob.store), and the cache updated with
+     * the stat data from before it was read. */
+    public ObjectId storeBlob(String filename, File file) {
+        FileStat current = FileStat.of(file);
+        if (current == null) {
+            return null;
+        }
+        FileStat cached;
+        synchronized (this) {
+            cached = getStats().get(filename);
+        }
+        if (cached != null && cached.matches(current)
+                && Repository.BLOB_STORE.contains(cached.getBlobID().toHex())) {
+            return cached.getBlobID();
+        }
+        ObjectId blobID = ObjectId.fromHex(Blob.store(file));
+        current.record(blobID);
+        synchronized (this) {
+            getStats().put(filename, current);
+            statsChanged = true;
+        }
+        return blobID;
+    }
+
+    /** Records that the working file FILE, named FILENAME, has just been written
+     * with the contents of the blob BLOBID. */
+    public void recordStat(String filename, File file, ObjectId blobID) {
+        FileStat current = FileStat.of(file);
+        if (current != null) {
+            current.record(blobID);
+            getStats().put(filename, current);
+            statsChanged = true;
+        }
+    }
+
+    /** Returns whether the stat cache changed since the index was loaded. */
+    public boolean statsChanged() {
+        return statsChanged;
+    }
+
     /** Stages file for addition. If it was previously staged for removal, then remove from
      * removals and only stage if modified.
      * @param filename the name of the file to be added
      * */
-    public void stage(String filename, String blobID) {
+    public void stage(String filename, ObjectId blobID) {
         additions.put(filename, blobID);
 
         if (getRemovals().contains(filename)) {
@@ -50,23 +146,83 @@ public class Index implements Serializable {
             /* Add to removals */
             getRemovals().add(filename);
             /* Remove from working directory. */
-            File file = Utils.join(Repository.CWD, filename);
-            file.delete();
+            Repository.deleteWorkingFile(filename);
+            getStats().remove(filename);
         }
         save();
     }
 
     /** Writes the Index object to the file system. */
     public void save() {
-        Utils.writeObject(Repository.INDEX, this);
+        Journal.write(Repository.INDEX, encode());
     }
 
     /** Loads the staging area. */
     public static Index load() {
-        return Utils.readObject(Repository.INDEX, Index.class);
+        return decode(Journal.read(Repository.INDEX));
+    }
+
+    /** Returns this index in its stored form. */
+    byte[] encode() {
+        return BinaryFormat.encode(out -> {
+            BinaryFormat.writeHeader(out, MAGIC, VERSION);
+            out.writeInt(additions.size());
+            for (Map.Entry<String, ObjectId> entry : additions.entrySet()) {
+                BinaryFormat.writeString(out, entry.getKey());
+                BinaryFormat.writeID(out, entry.getValue());
+            }
+            out.writeInt(removals.size());
+            for (String filename : removals) {
+                BinaryFormat.writeString(out, filename);
+            }
+            out.writeInt(getStats().size());
+            for (Map.Entry<String, FileStat> entry : getStats().entrySet()) {
+                BinaryFormat.writeString(out, entry.getKey());
+                entry.getValue().write(out);
+            }
+        });
     }
 
-    /** Clears the staging area. */
+    /** Returns the index stored as BYTES, in either the binary format or
+     * Java serialization. */
+    static Index decode(byte[] bytes) {
+        if (BinaryFormat.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, Index.class);
+        }
+        return BinaryFormat.decode(bytes, "index", in -> {
+            BinaryFormat.readHeader(in, MAGIC, VERSION, "index");
+            Index index = new Index();
+            for (int i = in.getInt(); i > 0; i -= 1) {
+                String filename = BinaryFormat.readString(in);
+                index.additions.put(filename, BinaryFormat.readObjectId(in));
+            }
+            for (int i = in.getInt(); i > 0; i -= 1) {
+                index.removals.add(BinaryFormat.readString(in));
+            }
+            for (int i = in.getInt(); i > 0; i -= 1) {
+                String filename = BinaryFormat.readString(in);
+                index.stats.put(filename, FileStat.read(in));
+            }
+            return index;
+        });
+    }
+
+    /** Converts an index serialized by an earlier version, whose blob IDs
+     * were Strings, as it is deserialized. */
+    @SuppressWarnings("unchecked")
+    private Object readResolve() {
+        HashMap<String, ObjectId> converted = new HashMap<>();
+        for (Map.Entry<String, ?> entry : ((Map<String, ?>) (Map<?, ?>) additions).entrySet()) {
+            Object id = entry.getValue();
+            converted.put(entry.getKey(),
+                    id instanceof String ? ObjectId.fromHex((String) id) : (ObjectId) id);
+        }
+        additions = converted;
+        return this;
+    }
+
+    /** Clears the staging area. The stat cache describes the working directory
+     * rather than the staging area, so it is kept. */
     public void clear() {
         additions.clear();
         removals.clear();
@@ -76,14 +232,4 @@ public class Index implements Serializable {
     public boolean isStaged(String filename) {
         return getAdditions().containsKey(filename);
     }
-
-    /** Returns the contents of a file staged for addition at the time that it was staged. */
-    public String getContent(String filename) {
-        assert getAdditions().containsKey(filename);
-        String blobID = getAdditions().get(filename);
-        File stagedBlobFile = Utils.join(Repository.BLOBS_DIR, blobID);
-        assert stagedBlobFile.exists();
-        Blob stagedBlob = Utils.readObject(stagedBlobFile, Blob.class);
-        return stagedBlob.getContents();
-    }
 }
@@ -0,0 +1,502 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** The write-ahead journal that makes each gitlet command all-or-nothing.
+ * <p>
+ * Objects are named by their contents and written to new files, so they
+ * never need protecting. Every other file in .gitlet (HEAD, the branches, the
+ * index, the commit graph and log, the config) is changed only through the
+ * journal. Its changes are held in memory until the command ends, and reads
+ * through the journal see them. Then commit makes them durable at once:
+ * <ol>
+ *   <li>flushes the objects written by the command to disk;</li>
+ *   <li>writes every change, with a checksum, to .gitlet/journal and flushes
+ *       it, along with one more to .gitlet/generation, which counts the
+ *       commits; this is the point at which the command has happened;</li>
+ *   <li>applies the changes, replacing whole files by renaming a temporary
+ *       file over them and appending at recorded offsets, and flushes the
+ *       changed files;</li>
+ *   <li>deletes the journal.</li>
+ * </ol>
+ * So a command makes one group of fsyncs at its end, however many files it
+ * changes. Applying a change twice has the same effect as applying it once,
+ * so if gitlet is killed at any point, the next command either finds no
+ * complete journal, and nothing has changed, or replays the journal before
+ * doing anything else (see recover). Setting core.fsync to false skips the
+ * flushes, which keeps commands atomic if gitlet is killed but not if the
+ * machine crashes.
+ * <p>
+ * For testing, the environment variable GITLET_CRASH_AT=N makes gitlet halt
+ * abruptly at the Nth point at which it writes to disk (see checkpoint).
+ *
+ *  @author David Rambo
+ */
+class Journal {
+    /** Leading magic number of the journal file ("GJNL"). */
+    private static final int MAGIC = 0x474a4e4c;
+    private static final int VERSION = 1;
+    /** Kinds of change. */
+    private static final byte REPLACE = 1;
+    private static final byte APPEND = 2;
+    private static final byte DELETE = 3;
+    private static final byte RENAME = 4;
+    /** Name in .gitlet of the temporary file that replaces a file. */
+    private static final String REPLACE_TMP = "replace.tmp";
+    /** Exit status with which a simulated crash halts, as if by SIGKILL. */
+    private static final int CRASH_STATUS = 137;
+
+    /** One change to a file under .gitlet. */
+    private static class Change {
+        private final byte type;
+        private final File file;
+        /** New contents for REPLACE; appended bytes for APPEND. */
+        private final byte[] contents;
+        /** Offset of an APPEND in the file. */
+        private final long offset;
+        /** File renamed to FILE by a RENAME. */
+        private final File source;
+
+        Change(byte type, File file, byte[] contents, long offset, File source) {
+            this.type = type;
+            this.file = file;
+            this.contents = contents;
+            this.offset = offset;
+            this.source = source;
+        }
+    }
+
+    /** Changes made by the running command, in order. */
+    private static final List<Change> PENDING = new ArrayList<>();
+    /** Files written directly by the running command that must be on disk
+     * before its changes are. */
+    private static final LinkedHashSet<File> UNSYNCED = new LinkedHashSet<>();
+    /** Number of write points passed, and the one at which to crash, or -1. */
+    private static int writePoints;
+    private static final int CRASH_AT = crashPoint();
+
+    /** Replaces the contents of FILE with CONTENTS. */
+    static synchronized void write(File file, byte[] contents) {
+        PENDING.add(new Change(REPLACE, file, contents.clone(), 0, null));
+    }
+
+    /** Appends BYTES to FILE, creating it if need be. */
+    static synchronized void append(File file, byte[] bytes) {
+        PENDING.add(new Change(APPEND, file, bytes.clone(), length(file), null));
+    }
+
+    /** Deletes FILE. */
+    static synchronized void delete(File file) {
+        PENDING.add(new Change(DELETE, file, null, 0, null));
+    }
+
+    /** Renames SOURCE, which the running command wrote and registered with
+     * sync, to FILE, replacing it. */
+    static synchronized void rename(File source, File file) {
+        PENDING.add(new Change(RENAME, file, null, 0, source));
+    }
+
+    /** Registers FILE, just written outside the journal, to be flushed to
+     * disk before the journal commits. */
+    static synchronized void sync(File file) {
+        UNSYNCED.add(file);
+        checkpoint();
+    }
+
+    /** Returns the contents of FILE with the running command's changes.
+     * Like Utils.readContents, throws IllegalArgumentException if it does not
+     * exist. */
+    static synchronized byte[] read(File file) {
+        byte[] contents = null;
+        boolean read = false;
+        for (Change change : PENDING) {
+            if (!change.file.equals(file)) {
+                continue;
+            }
+            if (!read && change.type == APPEND) {
+                contents = file.isFile() ? Utils.readContents(file) : new byte[0];
+            }
+            read = true;
+            switch (change.type) {
+                case REPLACE -> contents = change.contents;
+                case DELETE -> contents = null;
+                case RENAME -> contents = Utils.readContents(change.source);
+                default -> {
+                    int length = (int) change.offset + change.contents.length;
+                    contents = Arrays.copyOf(contents == null ? new byte[0] : contents, length);
+                    System.arraycopy(change.contents, 0, contents, (int) change.offset,
+                            change.contents.length);
+                }
+            }
+        }
+        if (!read) {
+            return Utils.readContents(file);
+        }
+        if (contents == null) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        return contents;
+    }
+
+    /** Returns whether FILE exists, given the running command's changes. */
+    static synchronized boolean exists(File file) {
+        boolean exists = file.isFile();
+        for (Change change : PENDING) {
+            if (change.file.equals(file)) {
+                exists = change.type != DELETE;
+            }
+        }
+        return exists;
+    }
+
+    /** Returns whether the running command has changed FILE. */
+    static synchronized boolean changes(File file) {
+        for (Change change : PENDING) {
+            if (change.file.equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the length of FILE, given the running command's changes. */
+    private static long length(File file) {
+        long length = file.length();
+        for (Change change : PENDING) {
+            if (change.file.equals(file)) {
+                switch (change.type) {
+                    case REPLACE -> length = change.contents.length;
+                    case APPEND -> length = change.offset + change.contents.length;
+                    case DELETE -> length = 0;
+                    default -> length = change.source.length();
+                }
+            }
+        }
+        return length;
+    }
+
+    /** Makes the running command's changes durable and applies them. */
+    static void commit() {
+        /* Read the config first: reading it takes the Config lock, and then
+         * this one, which must always be taken in that order. */
+        boolean fsync = Config.fsync();
+        if (hasChanges() && !RepositoryLock.upgrade()) {
+            /* A reader that wrote anything must commit it alone, and only if
+             * no writer got in while it let go of its lock: what it wrote
+             * (a rebuilt commit graph or log, say) was derived from what it
+             * read before, and would overwrite the writer's changes. It can
+             * all be derived again, so it is dropped. */
+            dropChanges();
+            RepositoryLock.resync();
+        }
+        long start = Trace.start();
+        long bytes = commit(fsync, Repository.GITLET_DIR);
+        if (bytes >= 0) {
+            Trace.end(Trace.Op.JOURNAL_COMMIT, start, bytes);
+        }
+        /* Changes to another repository that were not committed under its
+         * lock (see commit(File)) belong to a transfer that failed. */
+        dropChanges();
+    }
+
+    /** Makes the running command's changes to the files of the repository
+     * whose .gitlet directory is GITLETDIR, another than this one, durable
+     * and applies them, through a journal in that directory, so that the
+     * repository's own next command completes them if gitlet is killed
+     * meanwhile. The caller must hold that repository's lock exclusively.
+     * Changes to other repositories stay pending. */
+    static void commit(File gitletDir) {
+        boolean fsync = Config.fsync();
+        long start = Trace.start();
+        long bytes = commit(fsync, gitletDir);
+        if (bytes >= 0) {
+            Trace.end(Trace.Op.JOURNAL_COMMIT, start, bytes);
+        }
+    }
+
+    /** Returns the number of commits made through the journal in the .gitlet
+     * directory ROOT, which every commit that changes anything increases. */
+    static long generation(File root) {
+        File generation = Utils.join(root, Repository.GENERATION.getName());
+        if (!generation.isFile()) {
+            return 0;
+        }
+        return ByteBuffer.wrap(Utils.readContents(generation)).getLong();
+    }
+
+    /** Forgets the changes of the running command, but not the objects it
+     * wrote, which are still flushed. */
+    private static synchronized void dropChanges() {
+        PENDING.clear();
+    }
+
+    /** Returns whether the running command has changed anything. */
+    private static synchronized boolean hasChanges() {
+        return !PENDING.isEmpty();
+    }
+
+    /** Commits the changes to files under the .gitlet directory ROOT as
+     * commit does, with the journal in ROOT, flushing files to disk if FSYNC.
+     * Returns the size of the journal written, or -1 if there was nothing to
+     * commit. */
+    private static synchronized long commit(boolean fsync, File root) {
+        List<Change> changes = new ArrayList<>();
+        for (Change change : PENDING) {
+            if (isUnder(change.file, root)) {
+                changes.add(change);
+            }
+        }
+        if (changes.isEmpty() && UNSYNCED.isEmpty()) {
+            return -1;
+        }
+        if (fsync) {
+            LinkedHashSet<File> dirs = new LinkedHashSet<>();
+            for (File file : UNSYNCED) {
+                if (file.exists()) {
+                    force(file);
+                    dirs.add(file.getParentFile());
+                }
+            }
+            forceAll(dirs);
+        }
+        UNSYNCED.clear();
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        PENDING.removeAll(changes);
+        if (!root.isDirectory()) {
+            /* Outside a repository there is nowhere to keep a journal. */
+            apply(changes, fsync, root);
+            return 0;
+        }
+        File generation = Utils.join(root, Repository.GENERATION.getName());
+        byte[] next = ByteBuffer.allocate(Long.BYTES).putLong(generation(root) + 1).array();
+        changes.add(new Change(REPLACE, generation, next, 0, null));
+
+        File journal = Utils.join(root, Repository.JOURNAL.getName());
+        File tmp = Utils.join(journal.getParentFile(), journal.getName() + ".tmp");
+        checkpoint();
+        byte[] encoded = encode(changes, root);
+        Utils.writeContents(tmp, (Object) encoded);
+        if (fsync) {
+            force(tmp);
+        }
+        checkpoint();
+        move(tmp, journal);
+        if (fsync) {
+            force(journal.getParentFile());
+        }
+        checkpoint();
+        apply(changes, fsync, root);
+        journal.delete();
+        return encoded.length;
+    }
+
+    /** Returns whether FILE is under the directory ROOT. */
+    private static boolean isUnder(File file, File root) {
+        return file.toPath().toAbsolutePath().normalize()
+                .startsWith(root.toPath().toAbsolutePath().normalize());
+    }
+
+    /** Forgets the running command's changes, as if it had not run. */
+    static synchronized void abort() {
+        PENDING.clear();
+        UNSYNCED.clear();
+    }
+
+    /** Completes the command whose journal was left behind by a gitlet that
+     * was killed while committing it, if any. A journal that was not written
+     * completely belongs to a command that never happened, and is removed. */
+    static void recover() {
+        recover(Config.fsync());
+    }
+
+    /** Recovers as recover does, flushing files to disk if FSYNC. */
+    private static synchronized void recover(boolean fsync) {
+        File journal = Repository.JOURNAL;
+        Utils.join(journal.getParentFile(), journal.getName() + ".tmp").delete();
+        Utils.join(Repository.GITLET_DIR, REPLACE_TMP).delete();
+        if (!journal.isFile()) {
+            return;
+        }
+        List<Change> left = decode(Utils.readContents(journal), Repository.GITLET_DIR);
+        if (left != null) {
+            apply(left, fsync, Repository.GITLET_DIR);
+        }
+        journal.delete();
+    }
+
+    /** Applies CHANGES to their files under the .gitlet directory ROOT,
+     * flushing them to disk if FSYNC. */
+    private static void apply(List<Change> changes, boolean fsync, File root) {
+        LinkedHashSet<File> changed = new LinkedHashSet<>();
+        for (Change change : changes) {
+            File file = change.file;
+            file.getParentFile().mkdirs();
+            switch (change.type) {
+                case REPLACE -> {
+                    /* Not beside FILE, where it could pass for a branch. */
+                    File tmp = Utils.join(root, REPLACE_TMP);
+                    Utils.writeContents(tmp, (Object) change.contents);
+                    move(tmp, file);
+                }
+                case APPEND -> {
+                    try (FileChannel out = FileChannel.open(file.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                        out.write(ByteBuffer.wrap(change.contents), change.offset);
+                        out.truncate(change.offset + change.contents.length);
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                }
+                case DELETE -> file.delete();
+                default -> {
+                    if (change.source.exists()) {
+                        move(change.source, file);
+                    }
+                }
+            }
+            changed.add(file);
+            checkpoint();
+        }
+        if (fsync) {
+            LinkedHashSet<File> dirs = new LinkedHashSet<>();
+            for (File file : changed) {
+                if (file.exists()) {
+                    force(file);
+                }
+                dirs.add(file.getParentFile());
+            }
+            forceAll(dirs);
+        }
+    }
+
+    /** Returns CHANGES in the journal's format: the header and the number of
+     * changes, then each change's type, path relative to the .gitlet
+     * directory ROOT, and its contents, offset or source; and last, the SHA-1
+     * of all of that. */
+    private static byte[] encode(List<Change> changes, File root) {
+        byte[] body = BinaryFormat.encode(out -> {
+            BinaryFormat.writeHeader(out, MAGIC, VERSION);
+            out.writeInt(changes.size());
+            for (Change change : changes) {
+                out.writeByte(change.type);
+                BinaryFormat.writeString(out, relative(change.file, root));
+                switch (change.type) {
+                    case REPLACE -> {
+                        out.writeInt(change.contents.length);
+                        out.write(change.contents);
+                    }
+                    case APPEND -> {
+                        out.writeLong(change.offset);
+                        out.writeInt(change.contents.length);
+                        out.write(change.contents);
+                    }
+                    case RENAME -> BinaryFormat.writeString(out, relative(change.source, root));
+                    default -> { }
+                }
+            }
+        });
+        byte[] result = Arrays.copyOf(body, body.length + Utils.UID_LENGTH / 2);
+        System.arraycopy(Utils.sha1Bytes(Utils.sha1(body)), 0, result, body.length,
+                Utils.UID_LENGTH / 2);
+        return result;
+    }
+
+    /** Returns the changes in the journal BYTES of the .gitlet directory
+     * ROOT, or null if it is incomplete or corrupt. */
+    private static List<Change> decode(byte[] bytes, File root) {
+        int bodyLength = bytes.length - Utils.UID_LENGTH / 2;
+        if (bodyLength < 0) {
+            return null;
+        }
+        byte[] body = Arrays.copyOf(bytes, bodyLength);
+        byte[] sum = Arrays.copyOfRange(bytes, bodyLength, bytes.length);
+        if (!Arrays.equals(sum, Utils.sha1Bytes(Utils.sha1(body)))) {
+            return null;
+        }
+        return BinaryFormat.decode(body, "journal", in -> {
+            BinaryFormat.readHeader(in, MAGIC, VERSION, "journal");
+            List<Change> result = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i -= 1) {
+                byte type = in.get();
+                File file = Utils.join(root, BinaryFormat.readString(in));
+                switch (type) {
+                    case REPLACE -> {
+                        byte[] contents = new byte[in.getInt()];
+                        in.get(contents);
+                        result.add(new Change(type, file, contents, 0, null));
+                    }
+                    case APPEND -> {
+                        long offset = in.getLong();
+                        byte[] contents = new byte[in.getInt()];
+                        in.get(contents);
+                        result.add(new Change(type, file, contents, offset, null));
+                    }
+                    case DELETE -> result.add(new Change(type, file, null, 0, null));
+                    case RENAME -> result.add(new Change(type, file, null, 0,
+                            Utils.join(root, BinaryFormat.readString(in))));
+                    default -> throw Utils.error("Corrupt journal.");
+                }
+            }
+            return result;
+        });
+    }
+
+    /** Returns the path of FILE relative to the .gitlet directory ROOT. */
+    private static String relative(File file, File root) {
+        return root.toPath().toAbsolutePath().normalize()
+                .relativize(file.toPath().toAbsolutePath().normalize()).toString();
+    }
+
+    /** Renames SOURCE to TARGET atomically, replacing TARGET. */
+    private static void move(File source, File target) {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Flushes each of DIRS to disk. */
+    private static void forceAll(Iterable<File> dirs) {
+        for (File dir : dirs) {
+            force(dir);
+        }
+    }
+
+    /** Flushes the file or directory FILE to disk. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Marks a point at which gitlet writes to disk, halting at once if it is
+     * the one GITLET_CRASH_AT names. */
+    static synchronized void checkpoint() {
+        writePoints += 1;
+        if (writePoints == CRASH_AT) {
+            Runtime.getRuntime().halt(CRASH_STATUS);
+        }
+    }
+
+    /** Returns the write point named by GITLET_CRASH_AT, or -1. */
+    private static int crashPoint() {
+        String value = System.getenv("GITLET_CRASH_AT");
+        return value == null ? -1 : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+
+/** The options that limit which commits log and global-log print:
+ *      -n N          print at most N commits
+ *      --since DATE  print only commits made at or after DATE
+ *      --until DATE  print only commits made at or before DATE
+ *  A DATE is yyyy-MM-dd (midnight), "yyyy-MM-dd HH:mm:ss", both in the local
+ *  time zone, or a date as log prints it.
+ *
+ *  @author David Rambo
+ */
+class LogLimits {
+    /** Formats accepted for DATE, tried in order. */
+    private static final DateTimeFormatter DATE_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter LOG_DATE =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+
+    /** Most commits to print. */
+    private long count = Long.MAX_VALUE;
+    /** Earliest and latest times of commits to print, in milliseconds. */
+    private long since = Long.MIN_VALUE;
+    private long until = Long.MAX_VALUE;
+    /** Number of commits printed so far. */
+    private long printed;
+
+    /** Returns the limits given by the options ARGS[FROM..]. */
+    static LogLimits parse(String[] args, int from) {
+        LogLimits limits = new LogLimits();
+        for (int i = from; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                Main.exitMessage("Incorrect operands.");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-n" -> {
+                    try {
+                        limits.count = Long.parseLong(value);
+                    } catch (NumberFormatException excp) {
+                        Main.exitMessage("Incorrect operands.");
+                    }
+                    if (limits.count < 0) {
+                        Main.exitMessage("Incorrect operands.");
+                    }
+                }
+                case "--since" -> limits.since = parseDate(value);
+                case "--until" -> limits.until = parseDate(value);
+                default -> Main.exitMessage("Incorrect operands.");
+            }
+        }
+        return limits;
+    }
+
+    /** Returns the time in milliseconds of the date VALUE. */
+    private static long parseDate(String value) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            return LocalDate.parse(value).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            /* Try the next format. */
+        }
+        try {
+            return LocalDateTime.parse(value, DATE_TIME).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            /* Try the next format. */
+        }
+        try {
+            return ZonedDateTime.parse(value, LOG_DATE).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw Utils.error("Invalid date: %s.", value);
+        }
+    }
+
+    /** Returns whether all the commits to print have been printed. */
+    boolean done() {
+        return printed >= count;
+    }
+
+    /** Returns whether a commit made at TIMESTAMP is too old to print. */
+    boolean before(Date timestamp) {
+        return timestamp.getTime() < since;
+    }
+
+    /** Returns whether a commit made at TIMESTAMP is too new to print. */
+    boolean after(Date timestamp) {
+        return timestamp.getTime() > until;
+    }
+
+    /** Returns whether the commit made at TIMESTAMP is to be printed, counting
+     * it if so. */
+    boolean accept(Date timestamp) {
+        if (done() || before(timestamp) || after(timestamp)) {
+            return false;
+        }
+        printed += 1;
+        return true;
+    }
+}
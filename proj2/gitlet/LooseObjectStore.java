@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/** An ObjectStore that keeps each object in its own file inside a single
+ * directory. As in git, objects are fanned out into subdirectories named by
+ * the first two hex digits of their IDs, holding files named by the remaining
+ * 38, so that no directory grows too large and the objects whose IDs start
+ * with a given prefix can be found by listing a single subdirectory. Objects
+ * written by earlier versions directly into the directory, named by their
+ * full IDs, are still found.
+ *
+ *  @author David Rambo
+ */
+public class LooseObjectStore implements ObjectStore {
+    /** Number of leading ID characters that name the fan-out subdirectory. */
+    private static final int FANOUT_LENGTH = 2;
+
+    /** The directory holding the object files. */
+    private final File dir;
+
+    public LooseObjectStore(File dir) {
+        this.dir = dir;
+    }
+
+    /** Returns the file in which the object with the given ID is stored. */
+    File file(String id) {
+        File file = Utils.join(dir, id.substring(0, FANOUT_LENGTH), id.substring(FANOUT_LENGTH));
+        if (!file.exists()) {
+            File legacy = Utils.join(dir, id);
+            if (legacy.exists()) {
+                return legacy;
+            }
+        }
+        return file;
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return file(id).isFile();
+    }
+
+    @Override
+    public InputStream open(String id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            throw Utils.error("No object with ID %s.", id);
+        }
+        try {
+            return Files.newInputStream(file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies IN to a temporary file which is then renamed into place, so that
+     * an interrupted write never leaves a truncated object behind. The object
+     * is flushed to disk when the running command's journal commits. Each write
+     * has its own temporary file, so the same object may be written by several
+     * threads at once. */
+    @Override
+    public void write(String id, InputStream in) {
+        File file = file(id);
+        if (file.exists()) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        File tmp = null;
+        try {
+            tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp")
+                    .toFile();
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            install(tmp, file);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies IN to a temporary file, then stores it under the ID that IDOF
+     * returns once IN has been read to its end, unless STORED is true of
+     * that ID, and returns the ID. This is for objects named by a hash of
+     * their contents computed as they are copied, so that the name always
+     * matches the bytes stored, however the source changes meanwhile. */
+    String write(InputStream in, Supplier<String> idOf, Predicate<String> stored) {
+        dir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = Files.createTempFile(dir.toPath(), "object", ".tmp").toFile();
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            String id = idOf.get();
+            if (stored.test(id)) {
+                tmp.delete();
+                return id;
+            }
+            File file = file(id);
+            file.getParentFile().mkdirs();
+            install(tmp, file);
+            return id;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replaces the stored object ID with the contents of IN, by renaming a
+     * temporary file over it, so that the object is never missing: a crash
+     * leaves either the old file or the new one. Unless core.fsync is false,
+     * the new file is flushed to disk before the rename, since the old one is
+     * the only other copy of the object. */
+    void replace(String id, InputStream in) {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        File tmp = null;
+        try {
+            tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp")
+                    .toFile();
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (Config.fsync()) {
+                try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                        StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            install(tmp, file);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames the complete object file TMP to FILE. */
+    private static void install(File tmp, File file) throws IOException {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Journal.sync(file);
+    }
+
+    @Override
+    public long size(String id) {
+        return file(id).length();
+    }
+
+    @Override
+    public List<String> ids() {
+        return resolve("");
+    }
+
+    /** Lists only the fan-out subdirectories that can hold IDs starting with
+     * PREFIX, plus any objects stored before fan-out directories were used. */
+    @Override
+    public List<String> resolve(String prefix) {
+        List<String> result = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (name.length() == Utils.UID_LENGTH) {
+                if (name.startsWith(prefix)) {
+                    result.add(name);
+                }
+            } else if (name.length() == FANOUT_LENGTH && isFanoutFor(name, prefix)) {
+                List<String> rest = Utils.plainFilenamesIn(Utils.join(dir, name));
+                if (rest == null) {
+                    continue;
+                }
+                for (String suffix : rest) {
+                    String id = name + suffix;
+                    if (id.length() == Utils.UID_LENGTH && id.startsWith(prefix)) {
+                        result.add(id);
+                    }
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns whether the fan-out subdirectory NAME can hold IDs starting
+     * with PREFIX. */
+    private static boolean isFanoutFor(String name, String prefix) {
+        return prefix.length() >= FANOUT_LENGTH
+                ? prefix.startsWith(name) : name.startsWith(prefix);
+    }
+
+    /** Stores the object ID by hard-linking SOURCE, the file of the same
+     * object in another store, or copying it if the stores are on different
+     * file systems. Either way its bytes are not decoded. */
+    void link(String id, File source) {
+        if (contains(id)) {
+            return;
+        }
+        File file = Utils.join(dir, id.substring(0, FANOUT_LENGTH), id.substring(FANOUT_LENGTH));
+        file.getParentFile().mkdirs();
+        try {
+            Files.createLink(file.toPath(), source.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return;
+        } catch (IOException | UnsupportedOperationException excp) {
+            copy(source, file);
+        }
+        Journal.sync(file);
+    }
+
+    /** Copies SOURCE to FILE through a temporary file, letting the kernel
+     * move the bytes where it can. */
+    private static void copy(File source, File file) {
+        File tmp = null;
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp")
+                    .toFile();
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                long size = in.size();
+                for (long pos = 0; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes the object with the given ID, if it is stored loose. */
+    void delete(String id) {
+        File file = file(id);
+        file.delete();
+        if (!file.getParentFile().equals(dir)) {
+            file.getParentFile().delete();
+        }
+    }
+}
@@ -1,19 +1,51 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.Set;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
 public class Main {
+    /** Commands that only read the repository, and so can run while other
+     * such commands do (see RepositoryLock). */
+    private static final Set<String> READ_COMMANDS =
+            Set.of("log", "global-log", "status", "find", "diff");
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
-        if (args.length == 0) {  // If no commands are entered
-            System.out.println("Please enter a command.");
+        String[] command = Trace.begin(args);
+        try {
+            run(command);
+            Journal.commit();
+            RepositoryLock.release();
+            Trace.finish(System.err);
+        } catch (GitletException excp) {
+            Journal.commit();
+            RepositoryLock.release();
+            Trace.finish(System.err);
+            System.out.println(excp.getMessage());
             System.exit(0);
         }
+    }
+
+    /** Runs the command ARGS, as main does, but stops it by throwing a
+     * GitletException whose message is to be printed, rather than by exiting,
+     * so that a daemon (see Daemon) can run many commands in one process. The
+     * caller commits the command's changes (see Journal) and then releases
+     * its lock on the repository (see RepositoryLock). */
+    static void run(String... args) {
+        if (args.length == 0) {  // If no commands are entered
+            exitMessage("Please enter a command.");
+        }
         String firstArg = args[0];
+        if (Repository.GITLET_DIR.isDirectory() && !firstArg.equals("serve")) {
+            RepositoryLock.acquire(READ_COMMANDS.contains(firstArg));
+            /* Finish the last command first, if it was killed while committing. */
+            Journal.recover();
+        }
         switch(firstArg) {
             /* Creates a new Gitlet version-control system if one does not already exist. */
             case "init":
@@ -25,10 +57,10 @@ public class Main {
                 break;
             /* Adds files to staging area. */
             case "add":
-                if (args.length > 2) {
+                if (args.length < 2) {
                     exitMessage("Incorrect operands.");
                 }
-                Repository.add(args[1]);
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "rm" :
                 if (args.length != 2) {
@@ -60,16 +92,10 @@ public class Main {
                     exitMessage("Incorrect operands.");
                 }
             case "log":
-                if (args.length != 1) {
-                    exitMessage("Incorrect operands.");
-                }
-                Repository.log();
+                Repository.log(LogLimits.parse(args, 1));
                 break;
             case "global-log":
-                if (args.length != 1) {
-                    exitMessage("Incorrect operands.");
-                }
-                Repository.globalLog();
+                Repository.globalLog(LogLimits.parse(args, 1));
                 break;
             case "branch":
                 if (args.length != 2) {
@@ -105,14 +131,75 @@ public class Main {
                 }
                 Repository.merge(args[1]);
                 break;
+            /* Shows changes to working files, or between two commits. */
+            case "diff":
+                if (args.length == 1) {
+                    Repository.diff();
+                } else if (args.length == 3) {
+                    Repository.diff(args[1], args[2]);
+                } else {
+                    exitMessage("Incorrect operands.");
+                }
+                break;
+            /* Remote repositories (see Remote). */
+            case "add-remote":
+                if (args.length != 3) {
+                    exitMessage("Incorrect operands.");
+                }
+                Remote.add(args[1], args[2]);
+                break;
+            case "rm-remote":
+                if (args.length != 2) {
+                    exitMessage("Incorrect operands.");
+                }
+                Remote.remove(args[1]);
+                break;
+            case "fetch":
+                if (args.length != 3) {
+                    exitMessage("Incorrect operands.");
+                }
+                Remote.open(args[1]).fetch(args[2]);
+                break;
+            case "push":
+                if (args.length != 3) {
+                    exitMessage("Incorrect operands.");
+                }
+                Remote.open(args[1]).push(args[2]);
+                break;
+            case "pull":
+                if (args.length != 3) {
+                    exitMessage("Incorrect operands.");
+                }
+                Remote.open(args[1]).pull(args[2]);
+                break;
+            /* Serves commands from clients (see Client) until stopped. */
+            case "serve":
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else if (args.length == 2 && args[1].equals("--stop")) {
+                    Daemon.stop();
+                } else {
+                    exitMessage("Incorrect operands.");
+                }
+                break;
+            /* Deletes unreachable objects and packs the rest into packfiles. */
+            case "gc":
+                if (args.length == 1) {
+                    Repository.gc(false);
+                } else if (args.length == 2 && args[1].equals("--dry-run")) {
+                    Repository.gc(true);
+                } else {
+                    exitMessage("Incorrect operands.");
+                }
+                break;
             default:
                 exitMessage("No command with that name exists.");
         }
     }
 
-    /** Template for handling errors. */
+    /** Template for handling errors: stops the command, after which MESSAGE
+     * is printed. */
     public static void exitMessage(String message) {
-        System.out.println(message);
-        System.exit(0);
+        throw new GitletException(message);
     }
 }
@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/** A process-wide cache of decoded objects by ID, bounded by a total weight
+ * (a count of objects, or of bytes) and evicting the least recently used
+ * objects first. Objects are immutable once stored, so a cached object is
+ * never stale, and a command that needs the same commit, tree or blob several
+ * times reads and decodes it only once.
+ * <p>
+ * When the command is traced (see Trace), every cache counts its hits and
+ * misses.
+ *
+ *  @author David Rambo
+ */
+class ObjectCache<V> {
+    /** Every cache created, for clearAll. */
+    private static final List<ObjectCache<?>> CACHES = new ArrayList<>();
+
+    /** Maximum total weight of the cached objects. */
+    private final long capacity;
+    /** Returns the weight of an object. */
+    private final ToLongFunction<V> weigher;
+    /** The cached objects by ID, least recently used first. */
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Total weight of the cached objects. */
+    private long weight;
+    private final Trace.Counter hits;
+    private final Trace.Counter misses;
+
+    /** A cache of the objects called NAME of total weight at most CAPACITY,
+     * each weighing as much as WEIGHER says. */
+    ObjectCache(String name, long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.hits = Trace.counter(name + " cache hits");
+        this.misses = Trace.counter(name + " cache misses");
+        synchronized (CACHES) {
+            CACHES.add(this);
+        }
+    }
+
+    /** A cache of at most CAPACITY of the objects called NAME. */
+    ObjectCache(String name, int capacity) {
+        this(name, capacity, value -> 1);
+    }
+
+    /** Returns the object ID, loading it with LOADER and caching it if it is
+     * not cached. An object heavier than the whole cache is returned without
+     * being cached. */
+    V get(String id, Function<String, V> loader) {
+        synchronized (this) {
+            V value = entries.get(id);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            misses.increment();
+        }
+        /* Load outside the lock, so that threads can load different objects at
+         * once; two that load the same one just cache it twice. */
+        V value = loader.apply(id);
+        long w = weigher.applyAsLong(value);
+        if (w <= capacity) {
+            synchronized (this) {
+                V old = entries.put(id, value);
+                weight += w - (old == null ? 0 : weigher.applyAsLong(old));
+                while (weight > capacity) {
+                    Map.Entry<String, V> eldest = entries.entrySet().iterator().next();
+                    weight -= weigher.applyAsLong(eldest.getValue());
+                    entries.remove(eldest.getKey());
+                }
+            }
+        }
+        return value;
+    }
+
+    /** Empties every cache, after objects have been deleted. */
+    static void clearAll() {
+        synchronized (CACHES) {
+            for (ObjectCache<?> cache : CACHES) {
+                synchronized (cache) {
+                    cache.entries.clear();
+                    cache.weight = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/** The ObjectStore backing one kind of gitlet object (commits or blobs).
+ * New objects are written loose, one file per object, into the directory.
+ * Running gc repacks every object into a single packfile kept in the
+ * directory's pack/ subdirectory and deletes the loose copies. Reads consult
+ * the pack's index first and fall back to the loose files.
+ * <p>
+ * Objects are encoded with a Codec on the way in and decoded on the way out.
+ * Packing copies the stored (encoded) bytes of an object unchanged, so it is
+ * only ever compressed once, unless it is stored in the pack as a delta
+ * against a similar object (see PackFile).
+ * <p>
+ * When the command is traced (see Trace), the objects read and written are
+ * counted for each kind of object, by the name of its directory.
+ *
+ *  @author David Rambo
+ */
+public class ObjectDirectory implements ObjectStore {
+    /** Objects that have not yet been packed. */
+    private final LooseObjectStore loose;
+    /** The directory holding the packfile and its index. */
+    private final File packDir;
+    /** The opened pack, or null if it has not been opened or does not exist. */
+    private PackFile pack;
+    /** Modification time of the opened pack's index. */
+    private long packModified;
+    /** Codec for newly written objects, or null to use the repository's setting. */
+    private final Codec codec;
+    /** Counts of the objects of this kind read and written. */
+    private final Trace.Counter reads;
+    private final Trace.Counter writes;
+
+    /** An ObjectDirectory in DIR that compresses as the repository config says. */
+    public ObjectDirectory(File dir) {
+        this(dir, null);
+    }
+
+    /** An ObjectDirectory in DIR that writes new objects with CODEC. */
+    public ObjectDirectory(File dir, Codec codec) {
+        this.loose = new LooseObjectStore(dir);
+        this.packDir = Utils.join(dir, "pack");
+        this.codec = codec;
+        this.reads = Trace.counter(dir.getName() + " read");
+        this.writes = Trace.counter(dir.getName() + " written");
+    }
+
+    /** Returns the pack in this directory, opening it on first use, or null
+     * if there is none. */
+    private synchronized PackFile pack() {
+        if (pack == null) {
+            openPack();
+        }
+        return pack;
+    }
+
+    /** Opens the pack in this directory, if there is one, in place of any
+     * pack already open. */
+    private synchronized void openPack() {
+        if (pack != null) {
+            pack.close();
+        }
+        packModified = Utils.join(packDir, PackFile.INDEX_NAME).lastModified();
+        pack = PackFile.open(packDir);
+    }
+
+    /** Reopens the pack if another process has repacked this directory since
+     * it was opened. */
+    public synchronized void refresh() {
+        if (pack != null
+                && Utils.join(packDir, PackFile.INDEX_NAME).lastModified() != packModified) {
+            openPack();
+        }
+    }
+
+    /** Returns the codec with which new objects are written. */
+    private Codec codec() {
+        return codec != null ? codec : Config.compression();
+    }
+
+    @Override
+    public boolean contains(String id) {
+        if (!Utils.isUID(id)) {
+            return false;
+        }
+        PackFile p = pack();
+        return (p != null && p.contains(id)) || loose.contains(id);
+    }
+
+    @Override
+    public InputStream open(String id) {
+        reads.increment();
+        long start = Trace.start();
+        return Trace.reading(Trace.Op.OBJECT_READ, start, Codec.unwrap(stored.open(id)));
+    }
+
+    @Override
+    public void write(String id, InputStream in) {
+        if (!contains(id)) {
+            writes.increment();
+            long start = Trace.start();
+            loose.write(id, Codec.wrap(codec(), in));
+            if (Trace.enabled()) {
+                Trace.end(Trace.Op.OBJECT_WRITE, start, loose.size(id));
+            }
+        }
+    }
+
+    /** Stores the remaining contents of IN under the ID they hash to, which
+     * is computed while they are copied, and returns the ID. The contents are
+     * read only once, so the ID always matches the bytes stored; since it is
+     * known only at the end, they are copied even if already stored. */
+    public String write(InputStream in) {
+        long start = Trace.start();
+        DigestInputStream digest = new DigestInputStream(in, Utils.sha1Digest());
+        String id = loose.write(Codec.wrap(codec(), digest),
+                () -> Utils.sha1Hex(digest.getMessageDigest().digest()), this::contains);
+        if (Trace.enabled()) {
+            Trace.end(Trace.Op.OBJECT_WRITE, start, loose.size(id));
+        }
+        writes.increment();
+        return id;
+    }
+
+    /** Returns the number of bytes of the object in its stored form: encoded,
+     * or for a delta in a pack, uncompressed. */
+    @Override
+    public long size(String id) {
+        return stored.size(id);
+    }
+
+    @Override
+    public List<String> ids() {
+        TreeSet<String> result = new TreeSet<>();
+        PackFile p = pack();
+        if (p != null) {
+            result.addAll(p.ids());
+        }
+        result.addAll(loose.ids());
+        return new ArrayList<>(result);
+    }
+
+    /** Combines a binary search of the pack index with a listing of the
+     * single loose fan-out directory for PREFIX. */
+    @Override
+    public List<String> resolve(String prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        PackFile p = pack();
+        if (p != null) {
+            result.addAll(p.resolve(prefix));
+        }
+        result.addAll(loose.resolve(prefix));
+        return new ArrayList<>(result);
+    }
+
+    /** Stores the object ID from SOURCE, another repository's directory of
+     * the same kind of objects, unless it is stored here already. A loose
+     * object is linked or copied as it is stored (see LooseObjectStore.link);
+     * a packed one is copied in its stored form, resolving any delta. */
+    public void copy(String id, ObjectDirectory source) {
+        if (contains(id)) {
+            return;
+        }
+        source.reads.increment();
+        writes.increment();
+        File file = source.loose.file(id);
+        if (file.isFile()) {
+            loose.link(id, file);
+        } else {
+            loose.write(id, source.stored.open(id));
+        }
+    }
+
+    /** Returns the IDs of the objects that have not been packed. */
+    public List<String> looseIDs() {
+        return loose.ids();
+    }
+
+    /** Replaces the contents of the loose object ID with those of IN. Objects
+     * are otherwise immutable; this is only for converting objects written in
+     * an older format, whose contents mean the same in the new one. */
+    public void replace(String id, InputStream in) {
+        writes.increment();
+        loose.replace(id, Codec.wrap(codec(), in));
+    }
+
+    /** Moves every loose object into a new pack, together with the objects of
+     * the existing pack, then deletes the loose files. Returns the number of
+     * loose objects that were packed. */
+    public int repack() {
+        return repack(Config.packWindow(), Config.packDepth());
+    }
+
+    /** Repacks as repack does, trying each object as a delta against the
+     * WINDOW objects packed before it, with delta chains at most DEPTH long. */
+    public int repack(int window, int depth) {
+        List<String> looseIDs = loose.ids();
+        if (looseIDs.isEmpty()) {
+            return 0;
+        }
+        rewrite(ids(), looseIDs, Collections.emptyMap(), window, depth);
+        return looseIDs.size();
+    }
+
+    /** Deletes every object, packed or loose, that is not in LIVE, by
+     * repacking the rest as repack does. Returns the number deleted. */
+    public int prune(Set<String> live) {
+        return prune(live::contains, Collections.emptyMap());
+    }
+
+    /** Prunes as prune(Set) does, keeping the objects that LIVE maps to a
+     * path, and ordering them by those paths when packing, so that versions
+     * of a file are tried as deltas of each other (see PackFile.write). */
+    public int prune(Map<ObjectId, String> live) {
+        return prune(id -> live.containsKey(ObjectId.fromHex(id)), live);
+    }
+
+    /** Prunes the objects for which LIVE is false, packing the rest ordered
+     * by PATHS. */
+    private int prune(Predicate<String> live, Map<ObjectId, String> paths) {
+        List<String> looseIDs = loose.ids();
+        List<String> kept = new ArrayList<>();
+        int garbage = 0;
+        for (String id : ids()) {
+            if (live.test(id)) {
+                kept.add(id);
+            } else {
+                garbage += 1;
+            }
+        }
+        if (garbage == 0 && looseIDs.isEmpty()) {
+            return 0;
+        }
+        rewrite(kept, looseIDs, paths, Config.packWindow(), Config.packDepth());
+        return garbage;
+    }
+
+    /** Replaces the pack with one of the objects IDS, ordered by PATHS and
+     * packed with WINDOW and DEPTH as in repack, and then deletes the loose
+     * objects LOOSEIDS. */
+    private void rewrite(List<String> ids, List<String> looseIDs, Map<ObjectId, String> paths,
+                         int window, int depth) {
+        PackFile.write(packDir, stored, ids, paths, codec(), window, depth);
+        openPack();
+        for (String id : looseIDs) {
+            loose.delete(id);
+        }
+    }
+
+    /** A view of this directory's objects exactly as they are stored, without
+     * decoding, from which packs are written. */
+    private final ObjectStore stored = new ObjectStore() {
+        @Override
+        public boolean contains(String id) {
+            return ObjectDirectory.this.contains(id);
+        }
+
+        @Override
+        public InputStream open(String id) {
+            if (!Utils.isUID(id)) {
+                throw Utils.error("No object with ID %s.", id);
+            }
+            PackFile p = pack();
+            if (p != null) {
+                InputStream in = p.open(id);
+                if (in != null) {
+                    return in;
+                }
+            }
+            return loose.open(id);
+        }
+
+        @Override
+        public void write(String id, InputStream in) {
+            throw new UnsupportedOperationException("stored objects are read-only");
+        }
+
+        @Override
+        public long size(String id) {
+            PackFile p = pack();
+            if (p != null) {
+                long size = p.size(id);
+                if (size >= 0) {
+                    return size;
+                }
+            }
+            return loose.size(id);
+        }
+
+        @Override
+        public List<String> ids() {
+            return ObjectDirectory.this.ids();
+        }
+    };
+}
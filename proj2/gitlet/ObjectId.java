@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/** The SHA-1 ID of a gitlet object as its 20 raw bytes, held in two longs
+ * and an int, for use as a key of large maps and sets. A String ID takes
+ * about 100 bytes with its array; an ObjectId takes 32, and is compared and
+ * hashed without looking at characters.
+ * <p>
+ * ObjectIds order as their hexadecimal Strings do.
+ *
+ *  @author David Rambo
+ */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Length of an ID in bytes. */
+    static final int LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Bytes 0-7, 8-15 and 16-19 of the ID, big-endian. */
+    private final long first;
+    private final long second;
+    private final int third;
+
+    private ObjectId(long first, long second, int third) {
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    /** Returns the ObjectId of the hexadecimal SHA-1 UID ID. */
+    static ObjectId fromHex(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not a full SHA-1 UID: " + id);
+        }
+        return new ObjectId(hexLong(id, 0, 16), hexLong(id, 16, 16), (int) hexLong(id, 32, 8));
+    }
+
+    /** Returns the value of the DIGITS hexadecimal digits of ID from FROM. */
+    private static long hexLong(String id, int from, int digits) {
+        long result = 0;
+        for (int i = from; i < from + digits; i += 1) {
+            int digit = Utils.hexValue(id.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("not a full SHA-1 UID: " + id);
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+    /** Returns the ObjectId of the 20 raw bytes of BYTES from OFFSET. */
+    static ObjectId fromBytes(byte[] bytes, int offset) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, offset, LENGTH);
+        return new ObjectId(buf.getLong(), buf.getLong(), buf.getInt());
+    }
+
+    /** Returns the ObjectId of the next 20 raw bytes of BUF. */
+    static ObjectId read(ByteBuffer buf) {
+        return new ObjectId(buf.getLong(), buf.getLong(), buf.getInt());
+    }
+
+    /** Writes the 20 raw bytes of this ID to BUF. */
+    void write(ByteBuffer buf) {
+        buf.putLong(first);
+        buf.putLong(second);
+        buf.putInt(third);
+    }
+
+    /** Returns the 20 raw bytes of this ID. */
+    byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(LENGTH);
+        write(buf);
+        return buf.array();
+    }
+
+    /** Returns this ID as a hexadecimal SHA-1 UID. */
+    String toHex() {
+        return Utils.sha1Hex(toBytes());
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return first == other.first && second == other.second && third == other.third;
+    }
+
+    /** The bits of a SHA-1 are already uniformly distributed. */
+    @Override
+    public int hashCode() {
+        return (int) (first >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(first, other.first);
+        if (c == 0) {
+            c = Long.compareUnsigned(second, other.second);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(third, other.third);
+        }
+        return c;
+    }
+}
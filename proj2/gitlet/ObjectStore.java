@@ -0,0 +1,62 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A content-addressed store of gitlet objects, each named by its SHA-1 ID.
+ * Commits and blobs are read and written through an ObjectStore rather than
+ * as individual files, so that the on-disk layout (loose files, packfiles)
+ * is hidden from the rest of gitlet. Contents are streamed in and out, so
+ * that large blobs never need to be held in memory.
+ *
+ *  @author David Rambo
+ */
+public interface ObjectStore {
+
+    /** Returns whether an object with the full ID exists in the store. */
+    boolean contains(String id);
+
+    /** Returns a stream over the contents of the object with the given ID.
+     * Throws a GitletException if there is no such object. */
+    InputStream open(String id);
+
+    /** Stores the remaining contents of the stream IN under the given ID.
+     * Objects are immutable, so writing an ID that already exists is a no-op. */
+    void write(String id, InputStream in);
+
+    /** Returns the number of bytes the object with the given ID occupies in
+     * the store. */
+    long size(String id);
+
+    /** Returns the IDs of every object in the store in lexicographic order. */
+    List<String> ids();
+
+    /** Returns the IDs of the objects whose IDs start with PREFIX, which is a
+     * string of lower-case hex digits, in lexicographic order. */
+    default List<String> resolve(String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids()) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the whole contents of the object with the given ID. */
+    default byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores CONTENTS under the given ID. */
+    default void write(String id, byte[] contents) {
+        write(id, new ByteArrayInputStream(contents));
+    }
+}
@@ -0,0 +1,541 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A read-only packfile: many objects appended to a single file, plus a
+ * sorted index mapping each object's SHA-1 to its offset in the pack.
+ * <p>
+ * The pack file is a header (magic, version, object count) followed by one
+ * entry per object: a type byte, the length of the rest of the entry, and
+ * either the object as stored (FULL) or, for a DELTA, the raw ID of a base
+ * object in the same pack followed by a Delta from the base's contents to the
+ * object's, encoded with the store's codec. Reading a deltified object
+ * reconstructs its base first, which may itself be a delta; the length of
+ * these chains is bounded when the pack is written, and recently used bases
+ * are cached, so reading many versions of one file does not rebuild the
+ * same bases again and again.
+ * The index file is a header, a 256-entry fan-out table whose entry B counts
+ * the objects whose first ID byte is at most B, the sorted raw 20-byte IDs,
+ * and finally the pack offset of each ID in the same order. The index is
+ * memory-mapped, so a lookup is a binary search over the IDs sharing the
+ * first byte of the sought ID, without reading or parsing the whole index.
+ *
+ *  @author David Rambo
+ */
+class PackFile {
+    /** Name of the pack file within its directory. */
+    static final String PACK_NAME = "objects.pack";
+    /** Name of the index file within its directory. */
+    static final String INDEX_NAME = "objects.idx";
+
+    /** Leading magic numbers of the pack and index files ("GPAK", "GIDX"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+    private static final int INDEX_MAGIC = 0x47494458;
+    private static final int VERSION = 1;
+
+    /** Entry types of an object stored whole and of one stored as a delta. */
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+
+    /** Objects smaller than this are never deltified. */
+    private static final int MIN_DELTA_SIZE = 64;
+    /** Objects larger than this are never deltified, nor used as bases, so
+     * that packing never holds more than a window of them in memory. */
+    private static final int MAX_DELTA_SIZE = 16 << 20;
+    /** Total size of the reconstructed bases kept in the cache. */
+    private static final long BASE_CACHE_SIZE = 32 << 20;
+
+    /** Size in bytes of a raw object ID. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Offset of the fan-out table and of the sorted IDs in the index. */
+    private static final int FANOUT_OFFSET = 8;
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+    /** Size of an entry header in the pack: type byte plus int length. */
+    private static final int ENTRY_HEADER = 5;
+
+    /** The open pack file. */
+    private final FileChannel pack;
+    /** The memory-mapped index. */
+    private final MappedByteBuffer index;
+    /** Number of objects in the pack. */
+    private final int count;
+    /** Contents of recently reconstructed delta bases by ID, least recently
+     * used first, and their total size. */
+    private final LinkedHashMap<String, byte[]> baseCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long baseCacheBytes;
+
+    private PackFile(FileChannel pack, MappedByteBuffer index) {
+        this.pack = pack;
+        this.index = index;
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack index.");
+        }
+        this.count = index.getInt(FANOUT_OFFSET + 255 * 4);
+    }
+
+    /** Opens the pack in DIR, or returns null if DIR holds no pack. */
+    static PackFile open(File dir) {
+        File packFile = Utils.join(dir, PACK_NAME);
+        File indexFile = Utils.join(dir, INDEX_NAME);
+        if (!packFile.isFile() || !indexFile.isFile()) {
+            return null;
+        }
+        try (FileChannel idx = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+            return new PackFile(FileChannel.open(packFile.toPath(), StandardOpenOption.READ), map);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Closes the pack file. Streams already opened on it can no longer be
+     * read. */
+    void close() {
+        try {
+            pack.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns whether the pack holds the object with the given ID. */
+    boolean contains(String id) {
+        return find(Utils.sha1Bytes(id)) >= 0;
+    }
+
+    /** Returns a stream over the object with the given ID in its stored form,
+     * or null if it is not in this pack. Whole objects are read directly from
+     * the pack; deltified ones are reconstructed and returned uncompressed. */
+    InputStream open(String id) {
+        long offset = offset(id);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer header = entryHeader(id, offset);
+        if (header.get(0) == FULL) {
+            return new EntryInputStream(offset + ENTRY_HEADER, header.getInt(1));
+        }
+        return Codec.wrap(Codec.NONE, new ByteArrayInputStream(contents(id)));
+    }
+
+    /** Returns the number of bytes open returns for the object with the given
+     * ID, or -1 if it is not in this pack. */
+    long size(String id) {
+        long offset = offset(id);
+        if (offset < 0) {
+            return -1;
+        }
+        ByteBuffer header = entryHeader(id, offset);
+        if (header.get(0) == FULL) {
+            return header.getInt(1);
+        }
+        try (InputStream in = Codec.unwrap(new EntryInputStream(
+                offset + ENTRY_HEADER + ID_BYTES, header.getInt(1) - ID_BYTES))) {
+            return Codec.HEADER_LENGTH + Delta.resultLength(in.readNBytes(10));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the decoded contents of the object with the given ID, which
+     * must be in this pack. */
+    private byte[] contents(String id) {
+        long offset = offset(id);
+        ByteBuffer header = entryHeader(id, offset);
+        int length = header.getInt(1);
+        try {
+            if (header.get(0) == FULL) {
+                try (InputStream in = Codec.unwrap(
+                        new EntryInputStream(offset + ENTRY_HEADER, length))) {
+                    return in.readAllBytes();
+                }
+            }
+            ByteBuffer baseID = ByteBuffer.allocate(ID_BYTES);
+            readFully(baseID, offset + ENTRY_HEADER);
+            byte[] delta;
+            try (InputStream in = Codec.unwrap(new EntryInputStream(
+                    offset + ENTRY_HEADER + ID_BYTES, length - ID_BYTES))) {
+                delta = in.readAllBytes();
+            }
+            return Delta.apply(base(Utils.sha1Hex(baseID.array())), delta);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the delta base with the given ID, from the
+     * cache if it was reconstructed recently. */
+    private byte[] base(String id) {
+        synchronized (baseCache) {
+            byte[] cached = baseCache.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] contents = contents(id);
+        synchronized (baseCache) {
+            if (contents.length <= BASE_CACHE_SIZE && !baseCache.containsKey(id)) {
+                baseCache.put(id, contents);
+                baseCacheBytes += contents.length;
+                Iterator<byte[]> eldest = baseCache.values().iterator();
+                while (baseCacheBytes > BASE_CACHE_SIZE) {
+                    baseCacheBytes -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+        }
+        return contents;
+    }
+
+    /** Returns the pack offset of the entry for the given ID, or -1. */
+    private long offset(String id) {
+        int pos = find(Utils.sha1Bytes(id));
+        if (pos < 0) {
+            return -1;
+        }
+        return index.getLong(IDS_OFFSET + count * ID_BYTES + pos * 8);
+    }
+
+    /** Returns the header of the entry for ID at OFFSET in the pack. */
+    private ByteBuffer entryHeader(String id, long offset) {
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+        try {
+            readFully(header, offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (header.get(0) != FULL && header.get(0) != DELTA) {
+            throw Utils.error("Corrupt pack entry for %s.", id);
+        }
+        return header;
+    }
+
+    /** Returns the IDs of every object in the pack, in lexicographic order. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            index.get(IDS_OFFSET + i * ID_BYTES, raw);
+            result.add(Utils.sha1Hex(raw));
+        }
+        return result;
+    }
+
+    /** Returns the IDs in the pack that start with PREFIX, a string of
+     * lower-case hex digits, found by binary search for the first ID not less
+     * than PREFIX padded with zeros. */
+    List<String> resolve(String prefix) {
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < Utils.UID_LENGTH) {
+            padded.append('0');
+        }
+        byte[] key = Utils.sha1Bytes(padded.toString());
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        byte[] raw = new byte[ID_BYTES];
+        for (int pos = lo; pos < count; pos += 1) {
+            index.get(IDS_OFFSET + pos * ID_BYTES, raw);
+            String id = Utils.sha1Hex(raw);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Returns the position of the raw ID KEY in the sorted index, or -1. */
+    private int find(byte[] key) {
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int hi = index.getInt(FANOUT_OFFSET + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the ID at position POS of the index with KEY, as unsigned bytes. */
+    private int compareAt(int pos, byte[] key) {
+        int base = IDS_OFFSET + pos * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int cmp = Integer.compare(index.get(base + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** A stream over the contents of a single pack entry. */
+    private class EntryInputStream extends InputStream {
+        /** Pack offset of the next byte to be read. */
+        private long position;
+        /** Number of bytes of the entry not yet read. */
+        private long remaining;
+
+        EntryInputStream(long position, long length) {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int n = pack.read(buf, position);
+            if (n < 0) {
+                throw new IOException("Truncated pack file.");
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Fills BUF from the pack starting at POSITION. */
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (pack.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Truncated pack file.");
+            }
+        }
+    }
+
+    /** An object that the objects written after it may be deltified against. */
+    private static class Candidate {
+        private final String id;
+        private final byte[] contents;
+        /** Length of the delta chain leading to this object. */
+        private final int depth;
+
+        Candidate(String id, byte[] contents, int depth) {
+            this.id = id;
+            this.contents = contents;
+            this.depth = depth;
+        }
+    }
+
+    /** Returns the stored form of CONTENTS encoded with CODEC. */
+    private static byte[] encode(Codec codec, byte[] contents) throws IOException {
+        try (InputStream in = Codec.wrap(codec, new ByteArrayInputStream(contents))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Returns git's hash of the path PATH, or 0 if it is null. The last
+     * characters weigh the most, so files of the same name in different
+     * directories, and then files of the same extension, sort together. */
+    private static int nameHash(String path) {
+        int hash = 0;
+        if (path != null) {
+            for (int i = 0; i < path.length(); i += 1) {
+                char c = path.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    hash = (hash >>> 2) + (c << 24);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /** Returns whether SOURCE stores the object ID without compression. */
+    private static boolean isUncompressed(ObjectStore source, String id) throws IOException {
+        try (InputStream in = source.open(id)) {
+            byte[] header = in.readNBytes(Codec.HEADER_LENGTH);
+            return header.length == Codec.HEADER_LENGTH
+                    && Arrays.equals(header, 0, Codec.MAGIC.length, Codec.MAGIC, 0,
+                            Codec.MAGIC.length)
+                    && header[Codec.MAGIC.length] == Codec.NONE.id();
+        }
+    }
+
+    /** Writes a new pack and index into DIR containing every object in IDS,
+     * streamed from SOURCE. Both files are written under temporary names and
+     * only renamed over any existing pack once they are complete.
+     * <p>
+     * As in git, objects are grouped by a hash of the path PATHS gives for
+     * them (objects it has no path for form one group), so that versions of
+     * the same file, and files of the same name, are written next to each
+     * other, from largest to smallest within a group. Each is tried as a delta
+     * against the last WINDOW objects written, whose delta chains are shorter
+     * than DEPTH. The smallest delta is kept, compressed with CODEC, if it is
+     * under half the object's size; otherwise the object is copied whole as
+     * SOURCE stores it. */
+    static void write(File dir, ObjectStore source, List<String> ids, Map<ObjectId, String> paths,
+                      Codec codec, int window, int depth) {
+        String[] sorted = ids.toArray(new String[0]);
+        Arrays.sort(sorted);
+        long[] sizes = new long[sorted.length];
+        int[] nameHashes = new int[sorted.length];
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i += 1) {
+            sizes[i] = source.size(sorted[i]);
+            if (sizes[i] > Integer.MAX_VALUE) {
+                throw Utils.error("Object %s is too large to pack.", sorted[i]);
+            }
+            nameHashes[i] = paths.isEmpty() ? 0 : nameHash(paths.get(ObjectId.fromHex(sorted[i])));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> nameHashes[a] != nameHashes[b]
+                ? Integer.compareUnsigned(nameHashes[a], nameHashes[b])
+                : Long.compare(sizes[b], sizes[a]));
+
+        dir.mkdirs();
+        File packTmp = Utils.join(dir, PACK_NAME + ".tmp");
+        File indexTmp = Utils.join(dir, INDEX_NAME + ".tmp");
+        long[] offsets = new long[sorted.length];
+        int[] fanout = new int[256];
+        ArrayDeque<Candidate> recent = new ArrayDeque<>();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(packTmp.toPath())))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.length);
+            long offset = 12;
+            for (int i : order) {
+                String id = sorted[i];
+                offsets[i] = offset;
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+
+                byte[] contents = null;
+                if (window > 0 && sizes[i] <= MAX_DELTA_SIZE) {
+                    try (InputStream in = Codec.unwrap(source.open(id))) {
+                        contents = in.readAllBytes();
+                    }
+                }
+                Candidate base = null;
+                byte[] delta = null;
+                if (contents != null && contents.length >= MIN_DELTA_SIZE) {
+                    for (Candidate candidate : recent) {
+                        if (candidate.depth >= depth) {
+                            continue;
+                        }
+                        byte[] d = Delta.create(candidate.contents, contents);
+                        if (d.length < contents.length / 2
+                                && (delta == null || d.length < delta.length)) {
+                            delta = d;
+                            base = candidate;
+                        }
+                    }
+                }
+
+                if (delta != null) {
+                    byte[] stored = encode(codec, delta);
+                    out.writeByte(DELTA);
+                    out.writeInt(ID_BYTES + stored.length);
+                    out.write(Utils.sha1Bytes(base.id));
+                    out.write(stored);
+                    offset += ENTRY_HEADER + ID_BYTES + stored.length;
+                } else if (contents != null && codec != Codec.NONE
+                        && isUncompressed(source, id)) {
+                    /* Objects reconstructed from deltas come back uncompressed. */
+                    byte[] stored = encode(codec, contents);
+                    out.writeByte(FULL);
+                    out.writeInt(stored.length);
+                    out.write(stored);
+                    offset += ENTRY_HEADER + stored.length;
+                } else {
+                    out.writeByte(FULL);
+                    out.writeInt((int) sizes[i]);
+                    try (InputStream in = source.open(id)) {
+                        if (in.transferTo(out) != sizes[i]) {
+                            throw Utils.error("Object %s changed while packing.", id);
+                        }
+                    }
+                    offset += ENTRY_HEADER + sizes[i];
+                }
+
+                if (contents != null) {
+                    recent.addFirst(new Candidate(id, contents,
+                            base == null ? 0 : base.depth + 1));
+                    if (recent.size() > window) {
+                        recent.removeLast();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexTmp.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            int total = 0;
+            for (int b = 0; b < 256; b += 1) {
+                total += fanout[b];
+                out.writeInt(total);
+            }
+            for (String id : sorted) {
+                out.write(Utils.sha1Bytes(id));
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        /* Replace the pack and its index together, and before the loose
+         * objects they hold are deleted. */
+        Journal.sync(packTmp);
+        Journal.sync(indexTmp);
+        Journal.rename(packTmp, Utils.join(dir, PACK_NAME));
+        Journal.rename(indexTmp, Utils.join(dir, INDEX_NAME));
+        Journal.commit();
+    }
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/** Another gitlet repository on the same file system, named in the config by
+ *      java gitlet.Main add-remote NAME DIR/.gitlet
+ *  to and from which branches are pushed and fetched.
+ * <p>
+ * A transfer first finds the commits the receiving side is missing, walking
+ * back from the branch head through the sender's commit graph and stopping at
+ * every commit the receiver has. Only those commits' objects are copied, and
+ * of their trees only the ones the receiver lacks are read: a stored tree
+ * implies everything under it is stored too. Loose objects are hard-linked,
+ * or copied by the kernel if the repositories are on different file systems
+ * (see LooseObjectStore.link); packed ones are copied in their stored form.
+ * The receiver's commit graph, commit log and branch are then updated through
+ * the journal (see Journal) in the receiver's own .gitlet, while its
+ * repository lock is held, so that its next command completes an interrupted
+ * transfer.
+ *
+ *  @author David Rambo
+ */
+class Remote {
+    /** One side of a transfer: a repository's object stores and commit graph
+     * (null if it has none yet). */
+    private static class Side {
+        final ObjectDirectory commits;
+        final ObjectDirectory trees;
+        final ObjectDirectory blobs;
+        final CommitGraph graph;
+
+        Side(ObjectDirectory commits, ObjectDirectory trees, ObjectDirectory blobs,
+             CommitGraph graph) {
+            this.commits = commits;
+            this.trees = trees;
+            this.blobs = blobs;
+            this.graph = graph;
+        }
+
+        /** Returns whether this side has the commit ID. */
+        boolean has(String id) {
+            return graph != null ? graph.contains(id) : commits.contains(id);
+        }
+
+        /** Returns the IDs of the parents of the commit ID, stored here. */
+        List<String> parents(String id) {
+            if (graph != null && graph.contains(id)) {
+                return graph.getParentIDs(id);
+            }
+            Commit commit = Commit.decode(commits.read(id));
+            List<String> result = new ArrayList<>(2);
+            if (commit.getParentID() != null) {
+                result.add(commit.getParentID());
+            }
+            if (commit.getSecondParentID() != null) {
+                result.add(commit.getSecondParentID());
+            }
+            return result;
+        }
+    }
+
+    /** The remote's name. */
+    private final String name;
+    /** The remote's .gitlet directory. */
+    private final File gitletDir;
+
+    private Remote(String name, File gitletDir) {
+        this.name = name;
+        this.gitletDir = gitletDir;
+    }
+
+    /** Returns the config key holding the directory of the remote NAME. */
+    private static String key(String name) {
+        return "remote." + name + ".dir";
+    }
+
+    /** Records the .gitlet directory DIR, whose path separators are "/", as
+     * the remote NAME. */
+    static void add(String name, String dir) {
+        if (Config.get(key(name), null) != null) {
+            Main.exitMessage("A remote with that name already exists.");
+        }
+        Config.set(key(name), dir.replace("/", File.separator));
+    }
+
+    /** Forgets the remote NAME. */
+    static void remove(String name) {
+        if (Config.get(key(name), null) == null) {
+            Main.exitMessage("A remote with that name does not exist.");
+        }
+        Config.unset(key(name));
+    }
+
+    /** Returns the remote NAME, whose repository must exist. */
+    static Remote open(String name) {
+        String dir = Config.get(key(name), null);
+        if (dir == null) {
+            Main.exitMessage("A remote with that name does not exist.");
+        }
+        File gitletDir = new File(dir);
+        if (!gitletDir.isAbsolute()) {
+            gitletDir = Utils.join(Repository.CWD, dir);
+        }
+        if (!gitletDir.isDirectory()) {
+            Main.exitMessage("Remote directory not found.");
+        }
+        return new Remote(name, gitletDir);
+    }
+
+    /** Copies the commits of the remote's branch BRANCH that this repository
+     * lacks, with their objects, and points the branch NAME/BRANCH at its
+     * head. */
+    void fetch(String branch) {
+        FileChannel lock = RepositoryLock.lock(gitletDir, true);
+        try (lock) {
+            File ref = Utils.join(gitletDir, Repository.BRANCHES.getName(), branch);
+            if (!Journal.exists(ref)) {
+                Main.exitMessage("That remote does not have that branch.");
+            }
+            String head = new String(Journal.read(ref), StandardCharsets.UTF_8);
+            Side local = local();
+            Side remote = side();
+            for (String id : missing(head, local::has, remote::parents)) {
+                copy(id, remote, local);
+                Commit.load(id).save();
+            }
+            Journal.write(Utils.join(Repository.BRANCHES, name, branch),
+                    head.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the commits of the current branch that the remote lacks, with
+     * their objects, and points the remote's branch BRANCH at its head. The
+     * remote's branch must be an ancestor of the current head. */
+    void push(String branch) {
+        FileChannel lock = RepositoryLock.lock(gitletDir, false);
+        try (lock) {
+            String head = Repository.getCurrentHead();
+            Side local = local();
+            File ref = Utils.join(gitletDir, Repository.BRANCHES.getName(), branch);
+            if (Journal.exists(ref)) {
+                String remoteHead = new String(Journal.read(ref), StandardCharsets.UTF_8);
+                if (!local.graph.contains(remoteHead)
+                        || !local.graph.isAncestor(remoteHead, head)) {
+                    Main.exitMessage("Please pull down remote changes before pushing.");
+                }
+            }
+            Side remote = side();
+            for (String id : missing(head, remote::has, local::parents)) {
+                copy(id, local, remote);
+                Commit commit = Commit.load(id);
+                if (remote.graph != null) {
+                    remote.graph.add(commit);
+                }
+                CommitLog.appendTo(gitletDir, commit);
+            }
+            Journal.write(ref, head.getBytes(StandardCharsets.UTF_8));
+            /* Commit through the remote's own journal while it is still
+             * locked, so that a push killed halfway is completed by the
+             * remote's next command rather than by this repository's. */
+            Journal.commit(gitletDir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Fetches the remote's branch BRANCH and merges NAME/BRANCH into the
+     * current branch. */
+    void pull(String branch) {
+        fetch(branch);
+        /* Merge reads the fetched branch from disk. */
+        Journal.commit();
+        Repository.merge(name + "/" + branch);
+    }
+
+    /** Returns this repository as a side of a transfer. */
+    private static Side local() {
+        return new Side(Repository.COMMIT_STORE, Repository.TREE_STORE, Repository.BLOB_STORE,
+                CommitGraph.load());
+    }
+
+    /** Returns the remote repository as a side of a transfer. */
+    private Side side() {
+        return new Side(store(Repository.COMMITS_DIR), store(Repository.TREES_DIR),
+                store(Repository.BLOBS_DIR),
+                CommitGraph.open(Utils.join(gitletDir, Repository.COMMIT_GRAPH.getName())));
+    }
+
+    /** Returns the remote's object directory named like DIR in this one. */
+    private ObjectDirectory store(File dir) {
+        return new ObjectDirectory(Utils.join(gitletDir, dir.getName()));
+    }
+
+    /** Returns the commit HEAD and those of its ancestors for which HAVE is
+     * false, parents before children, finding the parents of each with
+     * PARENTS. The walk stops at every commit HAVE is true of. */
+    private static List<String> missing(String head, Predicate<String> have,
+                                        Function<String, List<String>> parents) {
+        List<String> result = new ArrayList<>();
+        HashSet<String> expanded = new HashSet<>();
+        HashSet<String> done = new HashSet<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        if (!have.test(head)) {
+            stack.push(head);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (done.contains(id)) {
+                stack.pop();
+            } else if (expanded.add(id)) {
+                for (String parent : parents.apply(id)) {
+                    if (!done.contains(parent) && !have.test(parent)) {
+                        stack.push(parent);
+                    }
+                }
+            } else {
+                stack.pop();
+                done.add(id);
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Copies the commit ID and whatever of its snapshot TO lacks from FROM:
+     * blobs, then trees, then the commit, so that whenever TO has an object
+     * it has everything the object refers to. */
+    private static void copy(String id, Side from, Side to) {
+        Commit commit = Commit.decode(from.commits.read(id));
+        String treeID = commit.storedTreeID();
+        if (treeID != null) {
+            copyTree(treeID, from, to);
+        } else {
+            for (ObjectId blobID : commit.getBlobs().values()) {
+                to.blobs.copy(blobID.toHex(), from.blobs);
+            }
+        }
+        to.commits.copy(id, from.commits);
+    }
+
+    /** Copies the tree TREEID and everything under it that TO lacks from FROM. */
+    private static void copyTree(String treeID, Side from, Side to) {
+        if (to.trees.contains(treeID)) {
+            return;
+        }
+        Tree tree = Tree.decode(from.trees.read(treeID));
+        for (String blobID : tree.blobIDs()) {
+            to.blobs.copy(blobID, from.blobs);
+        }
+        for (String subtreeID : tree.subtreeIDs()) {
+            copyTree(subtreeID, from, to);
+        }
+        to.trees.copy(treeID, from.trees);
+    }
+}
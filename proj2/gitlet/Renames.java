@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** Finds the files that were renamed or copied between two snapshots, given
+ * the files that disappeared and those that appeared, for status and merge.
+ * <p>
+ * Exact renames are found first, by blob ID, without reading anything. Each
+ * remaining file is then read once and reduced to a fingerprint: its contents
+ * are cut into chunks at newlines (and every 64 bytes, so that long or binary
+ * lines still split), each chunk is hashed together with the number of times
+ * it occurred before, and the 128 smallest of these hashes are kept. As in
+ * git, two files are as similar as the share of the larger one's chunks that
+ * the other has too. The number of shared chunks is estimated from the share
+ * of the smallest hashes of their union that both fingerprints contain (it is
+ * exact for files of at most 128 chunks). Pairs of files are only
+ * compared if their fingerprints share a hash, which an inverted index from
+ * hashes to files finds, and if their sizes allow them to be similar enough,
+ * so the work grows with the number of files rather than its square.
+ * <p>
+ * Each file that disappeared is the source of at most one rename, the most
+ * similar pair being chosen first. A file that still exists can also be given
+ * as the source of any number of copies.
+ *
+ *  @author David Rambo
+ */
+class Renames {
+    /** Least similarity, in percent, of a file to the one it was renamed
+     * or copied from. */
+    static final int THRESHOLD = 50;
+    /** Number of hashes kept in a fingerprint. */
+    private static final int SKETCH = 128;
+    /** Longest chunk a line is cut into. */
+    private static final int MAX_CHUNK = 64;
+    /** Hashes shared by more files than this (boilerplate lines) do not
+     * make candidates. */
+    private static final int MAX_POSTINGS = 64;
+    /** ID of the empty blob. Empty files are never paired. */
+    private static final ObjectId EMPTY = ObjectId.fromHex(Utils.sha1((Object) new byte[0]));
+
+    /** A file TARGET that was renamed or copied from SOURCE, whose contents
+     * are SCORE percent alike. */
+    static class Pair {
+        final String source;
+        final String target;
+        final int score;
+        final boolean copy;
+
+        Pair(String source, String target, int score, boolean copy) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+            this.copy = copy;
+        }
+    }
+
+    /** The fingerprint of a file: its number of chunks and the smallest of
+     * their hashes, in ascending order. */
+    private static class Fingerprint {
+        final int chunks;
+        final long[] sketch;
+
+        Fingerprint(int chunks, long[] sketch) {
+            this.chunks = chunks;
+            this.sketch = sketch;
+        }
+    }
+
+    /** Returns the renames of the files of DELETED into those of ADDED, by
+     * file name, and, if COPYSOURCES is not null, the copies of its files
+     * into those ADDED not renamed, in order of target name. Contents are
+     * read with CONTENTS. */
+    static List<Pair> detect(Map<String, ObjectId> deleted, Map<String, ObjectId> added,
+                             Map<String, ObjectId> copySources,
+                             Function<ObjectId, byte[]> contents) {
+        TreeMap<String, Pair> result = new TreeMap<>();
+        TreeMap<String, ObjectId> sources = new TreeMap<>(deleted);
+        TreeMap<String, ObjectId> targets = new TreeMap<>(added);
+        sources.values().removeIf(EMPTY::equals);
+        targets.values().removeIf(EMPTY::equals);
+
+        /* Exact renames, preferring a source with the target's own name in
+         * another directory. */
+        HashMap<ObjectId, List<String>> byID = new HashMap<>();
+        for (Map.Entry<String, ObjectId> source : sources.entrySet()) {
+            byID.computeIfAbsent(source.getValue(), k -> new ArrayList<>()).add(source.getKey());
+        }
+        for (Map.Entry<String, ObjectId> target : targets.entrySet()) {
+            List<String> candidates = byID.get(target.getValue());
+            if (candidates != null && !candidates.isEmpty()) {
+                int chosen = 0;
+                for (int i = 0; i < candidates.size(); i += 1) {
+                    if (baseName(candidates.get(i)).equals(baseName(target.getKey()))) {
+                        chosen = i;
+                        break;
+                    }
+                }
+                String source = candidates.remove(chosen);
+                result.put(target.getKey(), new Pair(source, target.getKey(), 100, false));
+            }
+        }
+        for (Pair pair : result.values()) {
+            sources.remove(pair.source);
+            targets.remove(pair.target);
+        }
+        /* Exact copies. */
+        HashMap<ObjectId, String> copyByID = new HashMap<>();
+        if (copySources != null) {
+            for (Map.Entry<String, ObjectId> source : new TreeMap<>(copySources).entrySet()) {
+                copyByID.putIfAbsent(source.getValue(), source.getKey());
+            }
+            for (Map.Entry<String, ObjectId> target : targets.entrySet()) {
+                String source = copyByID.get(target.getValue());
+                if (source != null) {
+                    result.put(target.getKey(), new Pair(source, target.getKey(), 100, true));
+                }
+            }
+            targets.keySet().removeAll(result.keySet());
+        }
+        if (targets.isEmpty() || (sources.isEmpty() && copySources == null)) {
+            return new ArrayList<>(result.values());
+        }
+
+        /* Similar files. Renames come from the deleted files, copies from the
+         * others. */
+        List<String> names = new ArrayList<>(sources.keySet());
+        int renameSources = names.size();
+        if (copySources != null) {
+            for (String name : new TreeMap<>(copySources).keySet()) {
+                if (!EMPTY.equals(copySources.get(name)) && !sources.containsKey(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        Fingerprint[] prints = new Fingerprint[names.size()];
+        HashMap<Long, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < prints.length; i += 1) {
+            String name = names.get(i);
+            ObjectId id = i < renameSources ? sources.get(name) : copySources.get(name);
+            prints[i] = fingerprint(contents.apply(id));
+            for (long hash : prints[i].sketch) {
+                postings.computeIfAbsent(hash, k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Pair> candidates = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> target : targets.entrySet()) {
+            Fingerprint print = fingerprint(contents.apply(target.getValue()));
+            HashSet<Integer> compared = new HashSet<>();
+            for (long hash : print.sketch) {
+                List<Integer> files = postings.get(hash);
+                if (files == null || files.size() > MAX_POSTINGS) {
+                    continue;
+                }
+                for (int i : files) {
+                    if (compared.add(i) && sizesAllow(prints[i], print)) {
+                        int score = similarity(prints[i], print);
+                        if (score >= THRESHOLD) {
+                            candidates.add(new Pair(names.get(i), target.getKey(), score,
+                                    i >= renameSources));
+                        }
+                    }
+                }
+            }
+        }
+        /* Best pairs first; renames before copies; then by name, so that the
+         * choice does not depend on the order of the maps. */
+        candidates.sort(Comparator.<Pair>comparingInt(p -> -p.score)
+                .thenComparing(p -> p.copy)
+                .thenComparing(p -> p.target)
+                .thenComparing(p -> p.source));
+        HashSet<String> renamed = new HashSet<>();
+        for (Pair pair : candidates) {
+            if (result.containsKey(pair.target) || (!pair.copy && renamed.contains(pair.source))) {
+                continue;
+            }
+            if (!pair.copy) {
+                renamed.add(pair.source);
+            }
+            result.put(pair.target, pair);
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /** Returns the last component of the file name NAME. */
+    private static String baseName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    /** Returns whether files of as many chunks as A and B have could be
+     * similar enough: no more chunks than the smaller has can be shared. */
+    private static boolean sizesAllow(Fingerprint a, Fingerprint b) {
+        long small = Math.min(a.chunks, b.chunks);
+        long large = Math.max(a.chunks, b.chunks);
+        return small * 100 >= large * THRESHOLD;
+    }
+
+    /** Returns the estimated share of the chunks of the larger of A and B
+     * that the other has too, in percent. The share of the smallest hashes of
+     * their union that both fingerprints contain estimates the share of the
+     * union both files contain, from which the shared chunks follow. If both
+     * fingerprints hold every chunk, the whole union is counted. */
+    private static int similarity(Fingerprint a, Fingerprint b) {
+        int limit = a.chunks <= SKETCH && b.chunks <= SKETCH ? Integer.MAX_VALUE : SKETCH;
+        int i = 0;
+        int j = 0;
+        int taken = 0;
+        int shared = 0;
+        while (taken < limit && (i < a.sketch.length || j < b.sketch.length)) {
+            if (j == b.sketch.length || (i < a.sketch.length && a.sketch[i] < b.sketch[j])) {
+                i += 1;
+            } else if (i == a.sketch.length || b.sketch[j] < a.sketch[i]) {
+                j += 1;
+            } else {
+                shared += 1;
+                i += 1;
+                j += 1;
+            }
+            taken += 1;
+        }
+        if (taken == 0) {
+            return 0;
+        }
+        double union = (double) shared / taken;
+        double common = union * (a.chunks + b.chunks) / (1 + union);
+        return (int) (common * 100 / Math.max(a.chunks, b.chunks));
+    }
+
+    /** Returns the fingerprint of CONTENTS. */
+    private static Fingerprint fingerprint(byte[] contents) {
+        HashMap<Long, Integer> seen = new HashMap<>();
+        long[] hashes = new long[16];
+        int chunks = 0;
+        int start = 0;
+        while (start < contents.length) {
+            int end = start;
+            long hash = 0xcbf29ce484222325L;
+            while (end < contents.length && end - start < MAX_CHUNK) {
+                hash = (hash ^ contents[end]) * 0x100000001b3L;
+                end += 1;
+                if (contents[end - 1] == '\n') {
+                    break;
+                }
+            }
+            int occurrence = seen.merge(hash, 1, Integer::sum);
+            if (chunks == hashes.length) {
+                hashes = Arrays.copyOf(hashes, chunks * 2);
+            }
+            hashes[chunks] = mix(hash + occurrence * 0x9e3779b97f4a7c15L);
+            chunks += 1;
+            start = end;
+        }
+        long[] sketch = Arrays.copyOf(hashes, chunks);
+        Arrays.sort(sketch);
+        return new Fingerprint(chunks, Arrays.copyOf(sketch, Math.min(chunks, SKETCH)));
+    }
+
+    /** Returns H with its bits spread over the whole word, so that the
+     * smallest hashes are a random sample of the chunks. */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9a7e5bcd5e3L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -1,7 +1,26 @@
 package gitlet;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
 
 import static gitlet.Utils.*;
 
@@ -18,12 +37,34 @@ public class Repository {
     public static final File BLOBS_DIR = join(GITLET_DIR, "/blobs");
     /** The directory in which to store commits. */
     public static final File COMMITS_DIR = join(GITLET_DIR, "/commits");
+    /** The directory in which to store trees. */
+    public static final File TREES_DIR = join(GITLET_DIR, "trees");
     /** The directory that stores branch names and their heads. */
     public static final File BRANCHES = join(GITLET_DIR, "/refs");
     /** The staging area file. */
     public static final File INDEX = join(GITLET_DIR, "index");
     /** The file that stores the currently checked out branch name. */
     public static final File HEAD = join(GITLET_DIR, "HEAD");
+    /** The file that records the shape of the commit history. */
+    public static final File COMMIT_GRAPH = join(GITLET_DIR, "commit-graph");
+    /** The append-only log of every commit's metadata. */
+    public static final File COMMIT_LOG = join(GITLET_DIR, "commit-log");
+    /** The directory of buckets indexing commit IDs by message. */
+    public static final File MESSAGES_DIR = join(GITLET_DIR, "messages");
+    /** The file that stores per-repository settings. */
+    public static final File CONFIG = join(GITLET_DIR, "config");
+    /** The write-ahead journal of a command's changes (see Journal). */
+    public static final File JOURNAL = join(GITLET_DIR, "journal");
+    /** The file locked by every command (see RepositoryLock). */
+    public static final File LOCK = join(GITLET_DIR, "lock");
+    /** The number of journal commits made so far (see Journal.generation). */
+    public static final File GENERATION = join(GITLET_DIR, "generation");
+    /** The object store holding blobs. */
+    public static final ObjectDirectory BLOB_STORE = new ObjectDirectory(BLOBS_DIR);
+    /** The object store holding commits. */
+    public static final ObjectDirectory COMMIT_STORE = new ObjectDirectory(COMMITS_DIR);
+    /** The object store holding trees. */
+    public static final ObjectDirectory TREE_STORE = new ObjectDirectory(TREES_DIR);
 
     /** Creates a new Gitlet version-control system in the current directory.
      * This system will automatically start with one commit: a commit that
@@ -38,11 +79,26 @@ public class Repository {
      * have the same UID) and all commits in all repositories will trace back to it.
      * .gitlet/
      * |–HEAD
+     * |–config
+     * |–journal (only while a command commits its changes)
+     * |–lock
+     * |–commit-graph
+     * |–commit-log
+     * |–messages/
+     *   |–message index buckets
      * |–index
      * |–blobs/
-     *   |–blob objects
+     *   |–loose blob objects
+     *   |–pack/
+     *     |–objects.pack, objects.idx
      * |–commits/
-     *   |–commit objects
+     *   |–loose commit objects
+     *   |–pack/
+     *     |–objects.pack, objects.idx
+     * |–trees/
+     *   |–loose tree objects
+     *   |–pack/
+     *     |–objects.pack, objects.idx
      * |–refs/
      *   |–branches
      * */
@@ -51,8 +107,12 @@ public class Repository {
         GITLET_DIR.mkdir();
         BLOBS_DIR.mkdir();
         COMMITS_DIR.mkdir();
+        TREES_DIR.mkdir();
         BRANCHES.mkdir();
 
+        /* Record the default settings. */
+        Config.set(Config.COMPRESSION, Config.compression().name());
+
         /* Create the staging area. */
         Index index = new Index();
         index.save();
@@ -69,45 +129,95 @@ public class Repository {
         updateBranchHead(currentBranch, commit.getID());
     }
 
-    /** Adds file to the staging area.
+    /** Adds files to the staging area. A directory stands for every working
+     * file beneath it, so "." adds every working file. The files are hashed
+     * in parallel and the index is written once.
      * If the current working version of the file is identical to the version in
      * the current commit, do not stage it to be added, and remove it from the
      * staging area if it is already there (as can happen when a file is changed,
      * added, and then changed back to its original version). The file will no longer
-     * be staged for removal (see gitlet rm), if it was at the time of the command. */
-    public static void add(String filename) {
-        File file = Utils.join(CWD, filename);
-        if (!file.exists()) {
-            Main.exitMessage("File does not exist.");
+     * be staged for removal (see gitlet rm), if it was at the time of the command.
+     * Nothing is staged if any of the files does not exist. */
+    public static void add(String... filenames) {
+        /* Expand directories to the working files beneath them, and check
+         * that all files exist before anything is staged. */
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        for (String filename : filenames) {
+            String path = normalize(filename);
+            File file = Utils.join(CWD, path);
+            if (file.isDirectory() && !file.equals(GITLET_DIR)) {
+                names.addAll(workingFiles(file));
+            } else if (!file.isFile()) {
+                Main.exitMessage("File does not exist.");
+            } else {
+                names.add(path);
+            }
         }
+        String[] files = names.toArray(new String[0]);
+
         // Load staging area.
         Index index = Index.load();
+        /* Hash and save the blobs of all files at once. Files are only hashed
+         * if their stat data changed. */
+        ObjectId[] blobIDs = new ObjectId[files.length];
+        ForkJoinPool.commonPool().invoke(new AddTask(index, files, blobIDs, 0, files.length));
+        if (Arrays.asList(blobIDs).contains(null)) {
+            Main.exitMessage("File does not exist.");
+        }
 
-        /* Create blob from file. */
-        Blob blob = new Blob(Utils.readContentsAsString(file));
         // Load current commit in order to check for changes.
         Commit commit = Commit.load(getCurrentHead());
-        // Check whether file is unchanged since current commit.
-        if (commit.getBlobs().containsKey(filename)) {
-            if (commit.getBlobs().get(filename).equals(blob.getID())) {
+        for (int i = 0; i < files.length; i += 1) {
+            // Check whether file is unchanged since current commit.
+            if (blobIDs[i].equals(commit.getBlobs().get(files[i]))) {
                 // Remove from staging area if unchanged.
-                index.getAdditions().remove(filename);
-                // If staged for removal, remove from removals list.
-                index.getRemovals().remove(filename);
-                index.save();
-                return;
+                index.getAdditions().remove(files[i]);
+            } else {
+                // Stage file
+                index.stage(files[i], blobIDs[i]);
             }
+            // If staged for removal, remove from removals list.
+            index.getRemovals().remove(files[i]);
         }
+        index.save();
+    }
 
-        // Stage file
-        index.stage(filename, blob.getID());
+    /** Hashes and saves the blobs of the working files FILES[LO..HI), storing
+     * their IDs in BLOBIDS. Ranges larger than THRESHOLD are split in half and
+     * the halves processed in parallel. */
+    private static class AddTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /** Largest number of files hashed by a single task. */
+        private static final int THRESHOLD = 8;
+
+        private final Index index;
+        private final String[] files;
+        private final ObjectId[] blobIDs;
+        private final int lo;
+        private final int hi;
+
+        AddTask(Index index, String[] files, ObjectId[] blobIDs, int lo, int hi) {
+            this.index = index;
+            this.files = files;
+            this.blobIDs = blobIDs;
+            this.lo = lo;
+            this.hi = hi;
+        }
 
-        // If staged for removal, remove from removals list.
-        index.getRemovals().remove(filename);
-        index.save();
-        // Save blob
-        File blobFile = Utils.join(BLOBS_DIR, blob.getID());
-        Utils.writeObject(blobFile, blob);
+        @Override
+        protected void compute() {
+            if (hi - lo <= THRESHOLD) {
+                for (int i = lo; i < hi; i += 1) {
+                    File file = Utils.join(CWD, files[i]);
+                    blobIDs[i] = index.storeBlob(files[i], file);
+                }
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new AddTask(index, files, blobIDs, lo, mid),
+                        new AddTask(index, files, blobIDs, mid, hi));
+            }
+        }
     }
 
     /** Unstage the file if it is currently staged for addition. If the file is
@@ -115,6 +225,7 @@ public class Repository {
      * the working directory if the user has not already done so. (Does not remove
      * if it is untracked in the current commit.) */
     public static void rmCommand(String filename) {
+        filename = normalize(filename);
         // Load the staging area.
         Index index = Index.load();
         // Load head commit.
@@ -174,13 +285,13 @@ public class Repository {
     /** Checkout a single file from a specified commit.
      * java gitlet.Main checkout [commit id] -- [file name] */
     public static void checkoutFile(String commitID, String filename) {
+        filename = normalize(filename);
         // Try to find a matching ID for abbreviated IDs of fewer than 40 characters
         if (commitID.length() < 40) {
             commitID = matchCommitID(commitID);
         }
         // Ensure a commit with that ID exists.
-        File commitFile = Utils.join(COMMITS_DIR, commitID);
-        if (!commitFile.exists()) {
+        if (!COMMIT_STORE.contains(commitID)) {
             Main.exitMessage("No commit with that id exists.");
         }
         // Load the Commit object.
@@ -190,42 +301,37 @@ public class Repository {
             Main.exitMessage("File does not exist in that commit.");
         }
         // Get the ID of the blob from the checked out commit.
-        String blobID = commit.getBlobs().get(filename);
-        // Load the blob.
-        File blobFile = Utils.join(BLOBS_DIR, blobID);
-        Blob blob = Utils.readObject(blobFile, Blob.class);
-        // Write to CWD
+        ObjectId blobID = commit.getBlobs().get(filename);
+        // Stream the blob's contents to CWD
         File checkoutFile = Utils.join(CWD, filename);
-        Utils.writeContents(checkoutFile, blob.getContents());
-    }
-
-    /** Searches through the commit object files for the best match against the given
-     * abbreviated ID. It compares the abbreviated ID's characters against each of those
-     * files, removing failed matches. If one remains, it returns; otherwise it exits
-     * with a message.
-     * <p>
-     * Since Gitlet does not implement a tree structure by which to organize its commit
-     * objects, this is slower relative to how Git does it. The Utils.plainFilenamesIn()
-     * method does provide a sorted List of Strings, so one optimization would stop
-     * checking for a match once the range of Strings exceeds the abbreviated ID.
+        Blob.writeTo(blobID, checkoutFile);
+        // Remember the stat data of the freshly written file.
+        Index index = Index.load();
+        index.recordStat(filename, checkoutFile, blobID);
+        index.save();
+    }
+
+    /** Finds the commit whose ID starts with the given abbreviated ID. Like Git, the
+     * commit store fans its loose objects out into directories named by the first two
+     * hex digits of their IDs and keeps packed IDs in a sorted index, so the lookup is
+     * a binary search of the pack index plus a listing of one small directory. If
+     * exactly one commit matches, it returns; otherwise it exits with a message.
      *
      * @param shortID abbreviated ID for the commit
      * @return full commit ID
      */
     private static String matchCommitID(String shortID) {
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
-        assert allCommits != null;
-        List<String> matchingCommits = new ArrayList<>();
-
-        for (String fullID : allCommits) {
-            if (fullID.regionMatches(true, 0, shortID, 0, shortID.length())) {
-                matchingCommits.add(fullID);
-            }
+        String prefix = shortID.toLowerCase();
+        if (prefix.isEmpty() || !prefix.matches("[0-9a-f]+")) {
+            Main.exitMessage("No commit with that id exists.");
         }
+        List<String> matchingCommits = COMMIT_STORE.resolve(prefix);
 
-        // More than one match, then exit.
-        if (matchingCommits.size() != 1) {
-            Main.exitMessage("No commit with that ID exists.");
+        if (matchingCommits.isEmpty()) {
+            Main.exitMessage("No commit with that id exists.");
+        } else if (matchingCommits.size() > 1) {
+            // More than one match, then exit.
+            Main.exitMessage("Ambiguous commit id; use more characters.");
         }
 
         return matchingCommits.get(0);
@@ -242,8 +348,7 @@ public class Repository {
      * Staging area is cleared.*/
     public static void checkoutBranch(String branchName) {
         // Ensure branch exists.
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        assert branches != null;
+        List<String> branches = branchNames();
         if (!branches.contains(branchName)) {
             Main.exitMessage("No such branch exists.");
         }
@@ -256,64 +361,176 @@ public class Repository {
             Main.exitMessage("There is an untracked file in the way; delete it, "
                     + "or add and commit it first.");
         }
-        checkoutCommit(getBranchHead(branchName));
+        Index index = Index.load();
+        checkoutCommit(getBranchHead(branchName), index);
 
         // Update HEAD to point at checked out branch
         updateHead(branchName);
 
-        // Load and clear the staging area.
-        Index index = Index.load();
+        // Clear the staging area.
         index.clear();
         index.save();
     }
 
     /** Loads all files tracked by a given commit and deletes files that were tracked
-     * by preceding head but which it does not track. */
-    private static void checkoutCommit(String commitID) {
-        // Load the commit to be checked out
+     * by preceding head but which it does not track. The stat data of the written
+     * files is recorded in INDEX. */
+    private static void checkoutCommit(String commitID, Index index) {
+        // Load the commit to be checked out, once.
         Commit checkoutCommit = Commit.load(commitID);
 
         // Load every file to working directory
-        for (String filename : checkoutCommit.getBlobs().keySet()) {
-            String content = getBlobContent(commitID, filename);
-            File checkoutFile = Utils.join(CWD, filename);
-            Utils.writeContents(checkoutFile, content);
+        writeWorkingFiles(checkoutCommit.getBlobs());
+        for (Map.Entry<String, ObjectId> entry : checkoutCommit.getBlobs().entrySet()) {
+            File checkoutFile = Utils.join(CWD, entry.getKey());
+            index.recordStat(entry.getKey(), checkoutFile, entry.getValue());
         }
 
-        /* Delete working files that are not tracked by the given commit. */
-        List<String> plainFiles = Utils.plainFilenamesIn(CWD);
-        assert plainFiles != null;
-        for (String filename : plainFiles) {
+        /* Delete working files that are not tracked by the given commit, and
+         * the directories that leaves empty. */
+        for (String filename : workingFiles(CWD)) {
             if (!checkoutCommit.getBlobs().containsKey(filename)) {
-                File file = Utils.join(CWD, filename);
-                file.delete();
+                deleteWorkingFile(filename);
+            }
+        }
+    }
+
+    /** Deletes the working file FILENAME and any directories above it that
+     * are left empty. */
+    static void deleteWorkingFile(String filename) {
+        File file = Utils.join(CWD, filename);
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns the paths, relative to the working directory and separated by
+     * "/", of every file in DIR and its subdirectories, in sorted order. The
+     * .gitlet directory is skipped. */
+    public static List<String> workingFiles(File dir) {
+        List<String> files = new ArrayList<>();
+        Path root = CWD.toPath();
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                    return path.equals(GITLET_DIR.toPath())
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(root.relativize(path).toString()
+                                .replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Returns FILENAME as a path relative to the working directory separated
+     * by "/", as files are named in commits and the index: "dir/f" for
+     * "./dir//f", and "" for ".". */
+    static String normalize(String filename) {
+        Path root = CWD.toPath();
+        return root.relativize(root.resolve(filename).normalize()).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /** Writes the contents of every blob in BLOBS <filename, blobID> to its file in
+     * the working directory. The files are independent, so they are written
+     * concurrently by a fixed pool of checkout workers (the checkout.workers
+     * setting, by default one per processor). */
+    private static void writeWorkingFiles(Map<String, ObjectId> blobs) {
+        int workers = Math.min(Config.checkoutWorkers(), blobs.size());
+        if (workers <= 1) {
+            for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+                Blob.writeTo(entry.getValue(), Utils.join(CWD, entry.getKey()));
             }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> writes = new ArrayList<>(blobs.size());
+            for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+                File checkoutFile = Utils.join(CWD, entry.getKey());
+                writes.add(pool.submit(() -> Blob.writeTo(entry.getValue(), checkoutFile)));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     /** Prints a log starting with the head commit and proceeding back through
-     * parent commits to the initial commit. */
-    public static void log() {
-        StringBuilder output = new StringBuilder();
+     * parent commits to the initial commit, or as far as LIMITS allow. The
+     * first-parent chain is followed in the commit graph; commits are only
+     * loaded to be printed, and each is printed as soon as it is loaded.
+     * > java gitlet.Main log [-n N] [--since DATE] [--until DATE] */
+    public static void log(LogLimits limits) {
+        PrintWriter output = logOutput();
+        CommitGraph graph = CommitGraph.load();
         String commitID = getCurrentHead();
-        while (commitID != null) {
+        while (commitID != null && !limits.done()) {
             Commit commit = Commit.load(commitID);
-            output.append(commit.toString()).append("\n");
-            commitID = commit.getParentID();
+            /* Commits on the chain are older than their children, so the walk
+             * can stop at the first one made before --since. */
+            if (limits.before(commit.getTimestamp())) {
+                break;
+            }
+            if (limits.accept(commit.getTimestamp())) {
+                output.print(commit + "\n");
+            }
+            commitID = graph.getParentID(commitID);
         }
-        System.out.println(output);
+        output.print("\n");
+        output.flush();
     }
 
     /** Like log, except displays information about all commits ever made. The order
-     * does not matter. */
-    public static void globalLog() {
-        StringBuilder output = new StringBuilder();
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
-        for (String commitID : allCommits) {
-            Commit commit = Commit.load(commitID);
-            output.append(commit.toString()).append("\n");
-        }
-        System.out.println(output);
+     * does not matter; commits are read in the order of the commit log, without
+     * loading any Commit objects. That order is not the order in which they were
+     * made (fetch and push append older commits after newer ones), so --since and
+     * --until only filter entries; only -n ends the walk early.
+     * > java gitlet.Main global-log [-n N] [--since DATE] [--until DATE] */
+    public static void globalLog(LogLimits limits) {
+        PrintWriter output = logOutput();
+        CommitLog.forEachWhile(entry -> {
+            if (limits.done()) {
+                return false;
+            }
+            if (limits.accept(entry.getTimestamp())) {
+                output.print(Commit.logEntry(entry.getID(), entry.getTimestamp(),
+                        entry.getMessage()) + "\n");
+            }
+            return true;
+        });
+        output.print("\n");
+        output.flush();
+    }
+
+    /** Returns a buffered writer to standard output for printing logs, which
+     * must be flushed when done. */
+    private static PrintWriter logOutput() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)), false);
     }
 
     /** Creates a new branch with the name provided.
@@ -321,14 +538,13 @@ public class Repository {
      * It does not checkout the new branch. */
     public static void branch(String name) {
         // Retrieve names of extant branches
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        assert branches != null;
+        List<String> branches = branchNames();
         if (branches.contains(name)) {
             Main.exitMessage("A branch with that name already exists.");
         }
 
         File newBranch = Utils.join(BRANCHES, name);
-        Utils.writeContents(newBranch, getCurrentHead());
+        Journal.write(newBranch, getCurrentHead().getBytes(StandardCharsets.UTF_8));
     }
 
     /** Deletes the branch with the given name. This removes only the pointer to that branch.
@@ -344,15 +560,17 @@ public class Repository {
 //            Main.exitMessage("A branch with that name does not exist.");
         File file = Utils.join(BRANCHES, branchName);
 
-        if (!file.delete()) {
+        if (!Journal.exists(file)) {
             Main.exitMessage("A branch with that name does not exist.");
         }
+        Journal.delete(file);
     }
 
     /** Prints out:
      * - what branches currently exist, marking the current with an asterisk
      * - files staged for addition
      * - files staged for removal
+     * - staged renames and copies, if the status.renames setting asks for them
      *   ::: Extra Credit :::
      * - modifications not staged for commit
      * - untracked files*/
@@ -361,9 +579,8 @@ public class Repository {
 
         /* Create list of branches, adding an asterisk to the currently checked out branch. */
         output.append("=== Branches ===\n");
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
+        List<String> branches = branchNames();
         String headBranch = getCurrentBranch();
-        assert branches != null;
         for (String branchName : branches) {
             if (headBranch.equals(branchName)) {
                 output.append("*").append(branchName).append("\n");
@@ -383,11 +600,25 @@ public class Repository {
             output.append(filename).append("\n");
         }
 
+        String renames = Config.statusRenames();
+        if (!renames.equals("false")) {
+            output.append("\n=== Renamed Files ===\n");
+            for (Renames.Pair pair : stagedRenames(index, renames.equals("copies"))) {
+                output.append(pair.source).append(" -> ").append(pair.target)
+                        .append(pair.copy ? " (copy)" : "").append("\n");
+            }
+        }
+
         /* The next two sections are extra credit. */
         output.append("\n=== Modifications Not Staged For Commit ===\n");
-        for (String filename : modifiedFiles()) {
+        for (String filename : modifiedFiles(index)) {
             output.append(filename).append("\n");
         }
+        // Keep the stat data of files that had to be re-hashed for next time,
+        // unless another command changed the index meanwhile.
+        if (index.statsChanged() && RepositoryLock.upgrade()) {
+            index.save();
+        }
 
         output.append("\n=== Untracked Files ===\n");
         for (String filename : untrackedFiles()) {
@@ -397,18 +628,34 @@ public class Repository {
         System.out.println(output);
     }
 
+    /** Returns the renames, and if COPIES the copies, of files in the HEAD
+     * commit into new files staged in INDEX. A file staged for removal can be
+     * renamed; any other file of the HEAD commit can be copied. */
+    private static List<Renames.Pair> stagedRenames(Index index, boolean copies) {
+        Map<String, ObjectId> tracked = Commit.load(getCurrentHead()).getBlobs();
+        HashMap<String, ObjectId> deleted = new HashMap<>();
+        for (String filename : index.getRemovals()) {
+            deleted.put(filename, tracked.get(filename));
+        }
+        HashMap<String, ObjectId> added = new HashMap<>(index.getAdditions());
+        added.keySet().removeAll(tracked.keySet());
+        HashMap<String, ObjectId> kept = null;
+        if (copies) {
+            kept = new HashMap<>(tracked);
+            kept.keySet().removeAll(index.getRemovals());
+        }
+        return Renames.detect(deleted, added, kept, Blob::read);
+    }
+
     /** Prints out the ids of all commits that have the given commit message, one per line.
      * @param message String of the message in the sought for commit(s).
      */
     public static void find(String message) {
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
         StringBuilder output = new StringBuilder();
 
-        for (String commitID : allCommits) {
-            Commit commit = Commit.load(commitID);
-            if (commit.getMessage().equals(message)) {
-                output.append(commitID).append("\n");
-            }
+        // Look the message up in the message index.
+        for (String commitID : CommitLog.find(message)) {
+            output.append(commitID).append("\n");
         }
 
         if (output.isEmpty()) {
@@ -417,6 +664,89 @@ public class Repository {
         System.out.println(output);
     }
 
+    /** Prints a unified diff of each tracked file whose working copy differs
+     * from its staged version, or from its version in the HEAD commit if it is
+     * not staged. Files staged for removal are left out.
+     * > java gitlet.Main diff */
+    public static void diff() {
+        Index index = Index.load();
+        TreeMap<String, ObjectId> tracked = new TreeMap<>(Commit.load(getCurrentHead()).getBlobs());
+        tracked.putAll(index.getAdditions());
+        tracked.keySet().removeAll(index.getRemovals());
+        for (Map.Entry<String, ObjectId> entry : tracked.entrySet()) {
+            String filename = entry.getKey();
+            File file = Utils.join(CWD, filename);
+            ObjectId currentID = index.currentBlobID(filename, file);
+            if (!entry.getValue().equals(currentID)) {
+                printDiff(filename, Blob.read(entry.getValue()),
+                        currentID == null ? null : readContents(file));
+            }
+        }
+        if (index.statsChanged() && RepositoryLock.upgrade()) {
+            index.save();
+        }
+    }
+
+    /** Prints a unified diff of each file that differs between two commits,
+     * either of whose IDs may be abbreviated.
+     * > java gitlet.Main diff [commit id] [commit id] */
+    public static void diff(String firstID, String secondID) {
+        Map<String, ObjectId> first = Commit.load(findCommitID(firstID)).getBlobs();
+        Map<String, ObjectId> second = Commit.load(findCommitID(secondID)).getBlobs();
+        TreeSet<String> filenames = new TreeSet<>(first.keySet());
+        filenames.addAll(second.keySet());
+        for (String filename : filenames) {
+            ObjectId before = first.get(filename);
+            ObjectId after = second.get(filename);
+            if (!Objects.equals(before, after)) {
+                printDiff(filename, before == null ? null : Blob.read(before),
+                        after == null ? null : Blob.read(after));
+            }
+        }
+    }
+
+    /** Prints a unified diff (see Diff) of the contents BEFORE and AFTER of
+     * FILENAME, either of which is null if the file does not exist. */
+    private static void printDiff(String filename, byte[] before, byte[] after) {
+        String nameA = before == null ? "/dev/null" : "a/" + filename;
+        String nameB = after == null ? "/dev/null" : "b/" + filename;
+        byte[] a = before == null ? new byte[0] : before;
+        byte[] b = after == null ? new byte[0] : after;
+        System.out.println("diff a/" + filename + " b/" + filename);
+        if (isBinary(a) || isBinary(b)) {
+            System.out.println("Binary files " + nameA + " and " + nameB + " differ");
+            return;
+        }
+        List<String> linesA = Diff.lines(a);
+        List<String> linesB = Diff.lines(b);
+        byte[] diff = Diff.unified(nameA, linesA, nameB, linesB, Diff.diff(linesA, linesB));
+        System.out.write(diff, 0, diff.length);
+        System.out.flush();
+    }
+
+    /** Returns whether CONTENTS look like a binary file's: like git, whether
+     * they contain a zero byte. */
+    private static boolean isBinary(byte[] contents) {
+        for (byte b : contents) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the full ID of the commit with the given, possibly abbreviated,
+     * ID, exiting with a message if there is no such commit. */
+    private static String findCommitID(String commitID) {
+        if (commitID.length() < 40) {
+            commitID = matchCommitID(commitID);
+        }
+        if (!COMMIT_STORE.contains(commitID)) {
+            Main.exitMessage("No commit with that id exists.");
+        }
+        return commitID;
+    }
+
     /** Checks out all the files tracked by the given commit. Removes tracked files that
      * are not present in that commit. Also moves the current branch's head to that commit
      * node. The commit ID may be abbreviated. Staging area is cleared. Basically, reset
@@ -435,10 +765,10 @@ public class Repository {
             commitID = matchCommitID(commitID);
         }
 
-        checkoutCommit(commitID);
-
-        // Load and clear the staging area.
         Index index = Index.load();
+        checkoutCommit(commitID, index);
+
+        // Clear the staging area.
         index.clear();
         index.save();
 
@@ -450,6 +780,9 @@ public class Repository {
      * It treats the current branch head as the parent commit, and then by comparing
      * files between the split point commit, the HEAD commit, and the head of the given
      * branch, it stages files for addition or removal before creating a new commit.
+     * Unless the merge.renames setting is false, a file renamed on one side
+     * since the split point is merged with the other side's version under its
+     * old name (see followRenames).
      */
     public static void merge(String givenBranch) {
         validateMerge(givenBranch);
@@ -458,32 +791,36 @@ public class Repository {
         String givenID = getBranchHead(givenBranch);
         Commit givenCommit = Commit.load(givenID);
         /* Find the common ancestor. */
-        LinkedList<String> currentHistory = Commit.getHistory(headCommit.getID());
-        LinkedList<String> givenHistory = Commit.getHistory(givenCommit.getID());
-        validateHistory(givenBranch, currentHistory, givenHistory);
+        validateHistory(givenBranch, headCommit.getID(), givenID);
         // Determine split point and load that commit.
-        String splitID = Commit.findSplit(currentHistory, givenHistory);
-        Commit splitCommit = Commit.load(splitID);
+        ObjectId splitID = Commit.findSplit(headCommit.getID(), givenID);
+        Commit splitCommit = Commit.load(splitID.toHex());
 
         LinkedList<String> conflicts = new LinkedList<>();
         Index index = Index.load();
+        HashMap<String, ObjectId> head = new HashMap<>(headCommit.getBlobs());
+        HashMap<String, ObjectId> given = new HashMap<>(givenCommit.getBlobs());
+        HashMap<String, ObjectId> split = new HashMap<>(splitCommit.getBlobs());
+        if (Config.mergeRenames()) {
+            followRenames(split, head, given, index);
+        }
 
         // Go through each file in the current branch's HEAD commit.
-        for (String filename : headCommit.getBlobs().keySet()) {
+        for (String filename : head.keySet()) {
             // Load the blob ID for the file
-            String headBlob = headCommit.getBlobs().get(filename);
+            ObjectId headBlob = head.get(filename);
             // Check for file in given branch and load blobID of its version
-            if (givenCommit.getBlobs().containsKey(filename)) {
-                String givenBlob = givenCommit.getBlobs().get(filename);
+            if (given.containsKey(filename)) {
+                ObjectId givenBlob = given.get(filename);
                 // Check for file at split point
-                if (splitCommit.getBlobs().containsKey(filename)) {
-                    String splitBlob = splitCommit.getBlobs().get(filename);
+                if (split.containsKey(filename)) {
+                    ObjectId splitBlob = split.get(filename);
 
                     // Modified in given branch...
                     if (!splitBlob.equals(givenBlob)) {
                         // but not modified in HEAD -> keep given version
                         if (splitBlob.equals(headBlob)) {
-                            index.stage(filename, givenBlob);
+                            takeGiven(filename, givenBlob, index);
                         // and is modified in HEAD -> check for conflict
                         } else if (!givenBlob.equals(headBlob)) {
                             conflicts.add(filename);
@@ -494,8 +831,8 @@ public class Repository {
                     // If different, then in conflict.
                     conflicts.add(filename);
                 } // Otherwise, do nothing in order to keep the HEAD version.
-            } else if (splitCommit.getBlobs().containsKey(filename)) { // Not in given branch.
-                String splitBlob = splitCommit.getBlobs().get(filename);
+            } else if (split.containsKey(filename)) { // Not in given branch.
+                ObjectId splitBlob = split.get(filename);
                 // If unmodified in HEAD since split, then remove.
                 if (headBlob.equals(splitBlob)) {
                     index.remove(filename);
@@ -503,59 +840,131 @@ public class Repository {
             } // Otherwise, unique to HEAD, so do nothing to keep it.
         }
         // Go through files in given branch that are NOT in current branch's HEAD commit.
-        for (String filename : givenCommit.getBlobs().keySet()) {
-            String givenBlobID = givenCommit.getBlobs().get(filename);
-            if (!headCommit.getBlobs().containsKey(filename)) {
+        for (String filename : given.keySet()) {
+            ObjectId givenBlobID = given.get(filename);
+            if (!head.containsKey(filename)) {
                 // Not in split (nor in HEAD), then stage given branch's version.
-                if (!splitCommit.getBlobs().containsKey(filename)) {
-                    checkoutFile(givenID, filename);
-                    index.stage(filename, givenBlobID);
+                if (!split.containsKey(filename)) {
+                    takeGiven(filename, givenBlobID, index);
                 // Else, since it is in split, if modified then stage given branch's version.
-                } else if (!givenBlobID.equals(splitCommit.getBlobs().get(filename))) {
-                    index.stage(filename, givenBlobID);
+                } else if (!givenBlobID.equals(split.get(filename))) {
+                    takeGiven(filename, givenBlobID, index);
                 } /* Otherwise, it is unmodified in given branch since split,
                      but not present in HEAD, so it remains removed. */
             }
         }
         index.save();
+        /* Files changed on both sides are merged line by line, so that only
+         * overlapping changes conflict. */
+        boolean conflicted = false;
+        for (String filename : conflicts) {
+            conflicted |= mergeFile(filename, split.get(filename), head.get(filename),
+                    given.get(filename));
+        }
         if (!conflicts.isEmpty()) {
-            mergeConflict(conflicts, givenBranch);
+            add(conflicts.toArray(new String[0]));
+        }
+        if (conflicted) {
+            mergeConflict(givenBranch);
         } else { // No conflicts. Conclude merge and print message.
             Commit mergeCommit = new Commit(headCommit.getID(), givenID, "Merged " + givenBranch
                                             + " into " + getCurrentBranch() + ".");
             mergeCommit.save();
+            clearStagingArea();
             updateBranchHead(getCurrentBranch(), mergeCommit.getID());
         }
     }
 
-    /** Helper method to handle a merge commit with conflicts.
-     * Handle merge conflicts by concatenating the two versions and staging the file
-     * for addition. Whereas the above logic handles already existing blobs, and therefore
-     * stages directly with the index, here a new blob needs to be created, so the
-     * Repository.add() method is used. Then conclude the merge and print out merge
-     * conflict message. */
-    private static void mergeConflict(LinkedList<String> conflicts, String givenBranch) {
-        Commit headCommit = Commit.load(getCurrentHead());
-        Commit givenCommit = Commit.load(getBranchHead(givenBranch));
+    /** Clears the staging area, whose changes a merge commit has recorded. */
+    private static void clearStagingArea() {
+        Index index = Index.load();
+        index.clear();
+        index.save();
+    }
 
-        for (String filename : conflicts) {
-            StringBuilder conflictFile = new StringBuilder();
-            conflictFile.append("<<<<<<< HEAD\n");
-            // Load the current HEAD blob.
-            File headBlobFile = Utils.join(BLOBS_DIR, headCommit.getBlobs().get(filename));
-            Blob headBlob = Utils.readObject(headBlobFile, Blob.class);
-            conflictFile.append(headBlob.getContents());
-            conflictFile.append("=======\n");
-            // Load the given blob.
-            File givenBlobFile = Utils.join(BLOBS_DIR, givenCommit.getBlobs().get(filename));
-            Blob givenBlob = Utils.readObject(givenBlobFile, Blob.class);
-            conflictFile.append(givenBlob.getContents());
-            conflictFile.append(">>>>>>>\n");
-            File file = Utils.join(CWD, filename);
-            Utils.writeContents(file, conflictFile.toString());
-            add(filename); // Stage merge-conflicted file for commit.
+    /** Writes the given branch's version BLOBID of FILENAME to the working
+     * file and stages it in INDEX. */
+    private static void takeGiven(String filename, ObjectId blobID, Index index) {
+        File file = Utils.join(CWD, filename);
+        Blob.writeTo(blobID, file);
+        index.stage(filename, blobID);
+        index.recordStat(filename, file, blobID);
+    }
+
+    /** Lines up the files of SPLIT, HEAD and GIVEN that one side renamed
+     * since the split point (see Renames) under their new names, so that
+     * merge compares each file's versions with one another. If the given
+     * branch renamed a file that HEAD kept, HEAD's version is moved to the
+     * new name in the working directory and INDEX. A file both sides renamed,
+     * to different names, is left as it is: both names are kept. */
+    private static void followRenames(Map<String, ObjectId> split, Map<String, ObjectId> head,
+                                      Map<String, ObjectId> given, Index index) {
+        Map<String, String> headRenames = renames(split, head);
+        Map<String, String> givenRenames = renames(split, given);
+        for (Map.Entry<String, String> rename : headRenames.entrySet()) {
+            String source = rename.getKey();
+            String target = rename.getValue();
+            if (target.equals(givenRenames.get(source))) {
+                split.put(target, split.remove(source));
+            } else if (given.containsKey(source) && !given.containsKey(target)) {
+                given.put(target, given.remove(source));
+                split.put(target, split.remove(source));
+            }
+        }
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            String source = rename.getKey();
+            String target = rename.getValue();
+            if (head.containsKey(source) && !head.containsKey(target)) {
+                ObjectId headBlob = head.remove(source);
+                File file = Utils.join(CWD, target);
+                Blob.writeTo(headBlob, file);
+                index.stage(target, headBlob);
+                index.recordStat(target, file, headBlob);
+                index.remove(source);
+                head.put(target, headBlob);
+                split.put(target, split.remove(source));
+            }
+        }
+    }
+
+    /** Returns the new name of each file of SPLIT that SIDE renamed, by old
+     * name. */
+    private static Map<String, String> renames(Map<String, ObjectId> split,
+                                               Map<String, ObjectId> side) {
+        HashMap<String, ObjectId> deleted = new HashMap<>(split);
+        deleted.keySet().removeAll(side.keySet());
+        HashMap<String, ObjectId> added = new HashMap<>(side);
+        added.keySet().removeAll(split.keySet());
+        HashMap<String, String> result = new HashMap<>();
+        if (!deleted.isEmpty() && !added.isEmpty()) {
+            for (Renames.Pair pair : Renames.detect(deleted, added, null, Blob::read)) {
+                result.put(pair.source, pair.target);
+            }
         }
+        return result;
+    }
 
+    /** Writes the three-way merge (see Diff3) of the versions HEADBLOB and
+     * GIVENBLOB of FILENAME, which descend from SPLITBLOB (null if the file
+     * was not in the split point), to the working file. Returns whether any of
+     * their changes conflict, in which case the conflicting regions are written
+     * between conflict markers. A file whose every line conflicts is written
+     * as the two versions concatenated between the markers. */
+    private static boolean mergeFile(String filename, ObjectId splitBlob, ObjectId headBlob,
+                                     ObjectId givenBlob) {
+        List<String> base = splitBlob == null ? Collections.emptyList()
+                : Diff.lines(Blob.read(splitBlob));
+        Diff3 merge = new Diff3(base, Diff.lines(Blob.read(headBlob)),
+                Diff.lines(Blob.read(givenBlob)));
+        Utils.writeContents(Utils.join(CWD, filename), (Object) Diff.join(merge.result()));
+        return merge.hasConflicts();
+    }
+
+    /** Concludes a merge with the given branch in which some files conflict,
+     * which have been written with conflict markers and staged by merge, and
+     * prints the merge conflict message. */
+    private static void mergeConflict(String givenBranch) {
+        Commit headCommit = Commit.load(getCurrentHead());
         String mergeMsg = "Merged "
                 + getCurrentBranch()
                 + " into "
@@ -563,18 +972,22 @@ public class Repository {
                 + ".";
         Commit mergeCommit = new Commit(headCommit.getID(), getBranchHead(givenBranch), mergeMsg);
         mergeCommit.save();
+        clearStagingArea();
         updateBranchHead(getCurrentBranch(), mergeCommit.getID());
         System.out.println("Encountered a merge conflict");
     }
 
-    private static void validateHistory(String givenBranch, LinkedList<String> currentHistory,
-                                        LinkedList<String> givenHistory) {
+    /** Checks, using the commit graph, whether either branch head is an ancestor
+     * of the other, in which case there is nothing to merge. */
+    private static void validateHistory(String givenBranch, String currentID,
+                                        String givenID) {
+        CommitGraph graph = CommitGraph.load();
         // Check whether given branch is unmodified ancestor of current branch.
-        if (currentHistory.contains(getBranchHead(givenBranch))) {
+        if (graph.isAncestor(givenID, currentID)) {
             Main.exitMessage("Given branch is an ancestor of the current branch.");
         }
         // Check whether current branch can be fast-forwarded.
-        if (givenHistory.contains(getCurrentHead())) {
+        if (graph.isAncestor(currentID, givenID)) {
             checkoutBranch(givenBranch);
             Main.exitMessage("Current branch is fast-forwarded.");
         }
@@ -599,39 +1012,162 @@ public class Repository {
         }
 
         /* Check that merge is possible with specified branch. */
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        assert branches != null;
+        List<String> branches = branchNames();
         if (!branches.contains(branchName)) {
             Main.exitMessage("A branch with that name does not exist.");
         }
     }
 
+    /** Forgets what this process has read from the repository's mutable
+     * files: the commit graph, the config and packs that have been rewritten.
+     * Objects never change, so those already loaded stay cached. A daemon
+     * (see Daemon) calls this before each command it runs, so that it sees
+     * changes made by other processes. */
+    static void refresh() {
+        CommitGraph.reset();
+        Config.reset();
+        COMMIT_STORE.refresh();
+        TREE_STORE.refresh();
+        BLOB_STORE.refresh();
+    }
+
+    /** Deletes every object that no branch and no staged file can reach,
+     * and packs the rest into each store's packfile, so that the repository
+     * no longer needs one file per object. With DRYRUN, only prints how many
+     * objects would be deleted and how many bytes they take.
+     * > java gitlet.Main gc [--dry-run] */
+    public static void gc(boolean dryRun) {
+        if (!dryRun) {
+            upgradeObjects();
+        }
+
+        /* Mark: commits through the commit graph, then their trees, noting
+         * the path each tree and blob is found at for packing. */
+        List<String> heads = new ArrayList<>();
+        for (String branch : branchNames()) {
+            heads.add(getBranchHead(branch));
+        }
+        CommitGraph graph = CommitGraph.load();
+        Set<String> commits = graph.reachable(heads);
+        Map<ObjectId, String> trees = new HashMap<>();
+        Map<ObjectId, String> blobs = new HashMap<>();
+        for (Map.Entry<String, ObjectId> addition : Index.load().getAdditions().entrySet()) {
+            blobs.put(addition.getValue(), addition.getKey());
+        }
+        for (String id : commits) {
+            Tree.mark(ObjectId.fromHex(Commit.load(id).getTreeID()), "", trees, blobs);
+        }
+
+        if (dryRun) {
+            long[] commitGarbage = garbage(COMMIT_STORE, commits::contains);
+            long[] treeGarbage = garbage(TREE_STORE, id -> trees.containsKey(ObjectId.fromHex(id)));
+            long[] blobGarbage = garbage(BLOB_STORE, id -> blobs.containsKey(ObjectId.fromHex(id)));
+            System.out.printf("Would remove %d commits, %d trees and %d blobs (%d bytes).%n",
+                    commitGarbage[0], treeGarbage[0], blobGarbage[0],
+                    commitGarbage[1] + treeGarbage[1] + blobGarbage[1]);
+            return;
+        }
+
+        /* Sweep: forget the unreachable commits before deleting them, so that
+         * if gc is killed nothing refers to a missing object. */
+        graph.retain(commits);
+        CommitLog.retain(commits);
+        Journal.commit();
+        COMMIT_STORE.prune(commits);
+        TREE_STORE.prune(trees);
+        BLOB_STORE.prune(blobs);
+        ObjectCache.clearAll();
+    }
+
+    /** Returns the number of objects in STORE for which LIVE is false and
+     * the number of bytes they are stored in. */
+    private static long[] garbage(ObjectDirectory store, Predicate<String> live) {
+        long[] result = new long[2];
+        for (String id : store.ids()) {
+            if (!live.test(id)) {
+                result[0] += 1;
+                result[1] += store.size(id);
+            }
+        }
+        return result;
+    }
+
+    /** Rewrites loose commits and blobs that earlier versions stored with Java
+     * serialization in the current formats, so that they are packed that way.
+     * Their IDs do not depend on the format, so they keep their IDs. */
+    private static void upgradeObjects() {
+        for (String id : COMMIT_STORE.looseIDs()) {
+            byte[] bytes = COMMIT_STORE.read(id);
+            if (BinaryFormat.isSerialized(bytes)) {
+                COMMIT_STORE.replace(id,
+                        new ByteArrayInputStream(Commit.decode(bytes).encode()));
+            }
+        }
+        for (String id : BLOB_STORE.looseIDs()) {
+            byte[] head;
+            try (InputStream in = BLOB_STORE.open(id)) {
+                head = in.readNBytes(2);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (BinaryFormat.isSerialized(head)) {
+                byte[] contents = BinaryFormat.legacyBlobContents(BLOB_STORE.read(id), id);
+                if (contents != null) {
+                    BLOB_STORE.replace(id, new ByteArrayInputStream(contents));
+                }
+            }
+        }
+    }
+
     /** Returns the name of the currently checked out branch. */
     public static String getCurrentBranch() {
-        return Utils.readContentsAsString(HEAD);
+        return new String(Journal.read(HEAD), StandardCharsets.UTF_8);
     }
 
     /** Records the name of the currently checked out branch. */
     public static void updateHead(String branchName) {
-        Utils.writeContents(HEAD, branchName);
+        Journal.write(HEAD, branchName.getBytes(StandardCharsets.UTF_8));
     }
 
     /** Returns the commit ID of the current head. */
     public static String getCurrentHead() {
-        String currentBranch = getCurrentBranch();
-        return Utils.readContentsAsString(Utils.join(BRANCHES, currentBranch));
+        return getBranchHead(getCurrentBranch());
+    }
+
+    /** Returns the names of all branches, sorted. The branches fetched from a
+     * remote are named REMOTE/BRANCH, and kept in a subdirectory of refs. */
+    public static List<String> branchNames() {
+        List<String> result = new ArrayList<>();
+        addBranchNames(BRANCHES, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Adds to RESULT the names of the branches in DIR, with PREFIX. */
+    private static void addBranchNames(File dir, String prefix, List<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addBranchNames(file, prefix + file.getName() + "/", result);
+            } else {
+                result.add(prefix + file.getName());
+            }
+        }
     }
 
     /** Returns the specified branch's head commit ID. */
     public static String getBranchHead(String branchName) {
         File branch = Utils.join(BRANCHES, branchName);
-        return Utils.readContentsAsString(branch);
+        return new String(Journal.read(branch), StandardCharsets.UTF_8);
     }
 
     /** Overwrites the named branch file with the newest commit ID. */
     public static void updateBranchHead(String branchName, String commitID) {
         File branch = Utils.join(BRANCHES, branchName);
-        Utils.writeContents(branch, commitID);
+        Journal.write(branch, commitID.getBytes(StandardCharsets.UTF_8));
     }
 
     /** Returns a list of untracked files in the working directory. */
@@ -643,7 +1179,7 @@ public class Repository {
         neither referenced by the current commit nor in the staging area. */
         Commit headCommit = Commit.load(getCurrentHead());
         Index index = Index.load();
-        for (String filename : Objects.requireNonNull(plainFilenamesIn(CWD))) {
+        for (String filename : workingFiles(CWD)) {
             boolean tracked = headCommit.getBlobs().containsKey(filename);
             boolean stagedForAdd = index.getAdditions().containsKey(filename);
             boolean stagedForRm = index.getRemovals().contains(filename);
@@ -664,36 +1200,36 @@ public class Repository {
      * - not staged for removal, but tracked in the current commit and deleted from the
      *   working directory.
      *
+     * Working files are compared by blob ID, which the INDEX's stat cache supplies
+     * without reading files whose stat data is unchanged.
+     *
      *   TODO: Does not catch untracked files staged for addition and further modified.
      * */
-    public static LinkedList<String> modifiedFiles() {
+    public static LinkedList<String> modifiedFiles(Index index) {
         LinkedList<String> files = new LinkedList<>();
 
         Commit headCommit = Commit.load(getCurrentHead());
-        Index index = Index.load();
 
         /* Check tracked files. */
         for (String filename : headCommit.getBlobs().keySet()) {
             File workingFile = Utils.join(CWD, filename);
+            ObjectId currentID = index.currentBlobID(filename, workingFile);
 
             // File was removed from working directory and not staged for removal.
-            if (!workingFile.exists() && !index.getRemovals().contains(filename)) {
+            if (currentID == null && !index.getRemovals().contains(filename)) {
                 files.add(filename + " (deleted)");
                 continue;
             }
 
-            if (workingFile.exists()) {
-                String currentContent = Utils.readContentsAsString(workingFile);
+            if (currentID != null) {
                 if (index.getAdditions().containsKey(filename)) {
-                    String stagedContent = index.getContent(filename);
-                    if (!currentContent.equals(stagedContent)) {
+                    if (!currentID.equals(index.getAdditions().get(filename))) {
                         // Was staged, but has since been changed.
                         files.add(filename + " (modified)");
                         continue;
                     }
                 } else {
-                    String trackedContent = getBlobContent(getCurrentHead(), filename);
-                    if (!currentContent.equals(trackedContent)) {
+                    if (!currentID.equals(headCommit.getBlobs().get(filename))) {
                         // Not staged and changed since last commit.
                         files.add(filename + " (modified)");
                         continue;
@@ -717,19 +1253,6 @@ public class Repository {
         return files;
     }
 
-    /** Returns the contents of a blob.
-     * @param commitID ID of the commit that references the blob
-     * @param filename name of the file of which the blob stores a snapshot */
-    public static String getBlobContent(String commitID, String filename) {
-        Commit commit = Commit.load(commitID);
-        File blobFile = Utils.join(BLOBS_DIR, commit.getBlobs().get(filename));
-        if (!blobFile.exists()) {
-            Main.exitMessage("No blob exists for" + filename + " in commit " + commitID);
-        }
-        Blob blob = Utils.readObject(blobFile, Blob.class);
-        return blob.getContents();
-    }
-
     /** Checks whether the file exists in the working directory. */
     public static boolean fileExists(String filename) {
         File file = Utils.join(CWD, filename);
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/** The lock on .gitlet/lock through which gitlet processes share a
+ * repository. Commands that only read it (log, status, ...) hold the lock
+ * shared, so any number of them run at once; commands that change it hold it
+ * exclusively, so each runs alone and sees the changes of those before it.
+ * The lock is held from before the command reads anything until its journal
+ * has committed (see Journal), and released when gitlet exits.
+ * <p>
+ * A reader may still want to write something it need not, like the stat
+ * data status refreshes in the index. It can upgrade its lock to an exclusive
+ * one, but must let other processes in between, so it is told whether the
+ * repository is as it was when it first took the lock.
+ *
+ *  @author David Rambo
+ */
+class RepositoryLock {
+    /** The open lock file, or null if no lock is held. */
+    private static FileChannel channel;
+    /** The lock held on it. */
+    private static FileLock lock;
+    /** Generation of the repository when the lock was first taken, which
+     * every command that changes it increases (see Journal.generation). */
+    private static long version;
+    /** Whether another command changed the repository while an upgrade let
+     * it in. */
+    private static boolean changed;
+
+    /** Takes the lock, SHARED or exclusive, waiting for any process that
+     * holds it in the other mode. A reader that finds a journal left behind
+     * by a killed command takes the lock exclusively instead, so that it can
+     * complete that command. */
+    static synchronized void acquire(boolean shared) {
+        try {
+            channel = FileChannel.open(Repository.LOCK.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lock = channel.lock(0, Long.MAX_VALUE, shared);
+            if (shared && Repository.JOURNAL.exists()) {
+                lock.release();
+                lock = channel.lock();
+            }
+            version = Journal.generation(Repository.GITLET_DIR);
+            changed = false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes the lock exclusive, if it is shared, and returns whether no other
+     * command has changed the repository since it was taken. Once upgraded,
+     * the lock keeps giving the answer of its upgrade. */
+    static synchronized boolean upgrade() {
+        if (lock == null) {
+            return true;
+        }
+        if (!lock.isShared()) {
+            return !changed;
+        }
+        try {
+            lock.release();
+            lock = channel.lock();
+            changed = Journal.generation(Repository.GITLET_DIR) != version;
+            return !changed;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Takes the repository as it is now as the one the command has read,
+     * once the command has dropped what it derived from what it read before
+     * an upgrade found it changed. */
+    static synchronized void resync() {
+        if (lock == null) {
+            return;
+        }
+        version = Journal.generation(Repository.GITLET_DIR);
+        changed = false;
+    }
+
+    /** Releases the lock, if it is held. */
+    static synchronized void release() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            channel = null;
+            lock = null;
+        }
+    }
+
+    /** Locks the repository whose .gitlet directory is GITLETDIR, SHARED or
+     * exclusively, as its own commands would, and returns the channel whose
+     * closing releases the lock. */
+    static FileChannel lock(File gitletDir, boolean shared) {
+        try {
+            FileChannel other = FileChannel.open(Utils.join(gitletDir, Repository.LOCK.getName())
+                    .toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            other.lock(0, Long.MAX_VALUE, shared);
+            return other;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Counts and times the file I/O, encoding and hashing a command does, when
+ * asked to by the environment variable GITLET_TRACE or by --trace before the
+ * command:
+ *      java gitlet.Main --trace merge other
+ *  When the command finishes, a table of the calls, bytes and milliseconds of
+ *  each kind of operation is printed to System.err (for a daemon, to the
+ *  client), followed by the counters (see Counter) that were incremented,
+ *  such as the objects of each kind read and written and the hits and misses
+ *  of each cache. If GITLET_TRACE is "jfr", each operation and command is instead
+ *  emitted as a JDK Flight Recorder event (gitlet.Operation, gitlet.Command),
+ *  recorded when the JVM runs with -XX:StartFlightRecording.
+ * <p>
+ * When tracing is off, each traced call costs a test of a static field.
+ *
+ *  @author David Rambo
+ */
+class Trace {
+    /** The kinds of operation traced. */
+    enum Op {
+        READ_CONTENTS("readContents"),
+        WRITE_CONTENTS("writeContents"),
+        DECODE("decode"),
+        ENCODE("encode"),
+        LIST_FILES("plainFilenamesIn"),
+        SHA1("sha1"),
+        OBJECT_READ("object read"),
+        OBJECT_WRITE("object write"),
+        JOURNAL_COMMIT("journal commit");
+
+        /** The operation's name in the table. */
+        final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+    }
+
+    /** A count of events of some kind, such as the hits of a cache, reported
+     * under its label after the operations. Counting costs only a test of a
+     * static field when tracing is off. */
+    static final class Counter {
+        /** The counter's name in the table. */
+        private final String label;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String label) {
+            this.label = label;
+        }
+
+        /** Counts one event, if the command is traced. */
+        void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+    }
+
+    /** A traced operation, as a flight recorder event. */
+    @Name("gitlet.Operation")
+    @Label("Gitlet Operation")
+    @Category("Gitlet")
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    /** A gitlet command, as a flight recorder event. */
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+    }
+
+    /** Tracing as GITLET_TRACE asks: "jfr" for events, anything else for
+     * the table. */
+    private static final String SETTING = System.getenv("GITLET_TRACE");
+    private static final boolean EVENTS = "jfr".equals(SETTING);
+    /** Whether the current command is traced. */
+    private static boolean enabled;
+
+    /** Every counter, by label. */
+    private static final ConcurrentHashMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    /** Calls, bytes and nanoseconds of each kind of operation. */
+    private static final LongAdder[] CALLS = adders();
+    private static final LongAdder[] BYTES = adders();
+    private static final LongAdder[] NANOS = adders();
+
+    /** The current command, its start time, and its event. */
+    private static String command;
+    private static long commandStart;
+    private static CommandEvent commandEvent;
+
+    /** Returns an adder for each kind of operation. */
+    private static LongAdder[] adders() {
+        LongAdder[] result = new LongAdder[Op.values().length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Starts tracing the command ARGS, if it is to be traced, and returns
+     * ARGS without any leading --trace. */
+    static String[] begin(String[] args) {
+        boolean flag = args.length > 0 && args[0].equals("--trace");
+        if (flag) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        enabled = flag || (SETTING != null && !SETTING.isEmpty());
+        if (enabled) {
+            for (int i = 0; i < CALLS.length; i += 1) {
+                CALLS[i].reset();
+                BYTES[i].reset();
+                NANOS[i].reset();
+            }
+            for (Counter counter : COUNTERS.values()) {
+                counter.count.reset();
+            }
+            command = String.join(" ", args);
+            commandStart = System.nanoTime();
+            if (EVENTS) {
+                commandEvent = new CommandEvent();
+                commandEvent.command = command;
+                commandEvent.begin();
+            }
+        }
+        return args;
+    }
+
+    /** Stops tracing the current command, printing its table to OUT. */
+    static void finish(PrintStream out) {
+        if (!enabled) {
+            return;
+        }
+        enabled = false;
+        if (EVENTS) {
+            commandEvent.commit();
+            commandEvent = null;
+            return;
+        }
+        out.printf("gitlet %s: %.2f ms%n", command, (System.nanoTime() - commandStart) / 1e6);
+        out.printf("%-20s %8s %12s %10s%n", "operation", "calls", "bytes", "ms");
+        for (Op op : Op.values()) {
+            int i = op.ordinal();
+            if (CALLS[i].sum() > 0) {
+                out.printf("%-20s %8d %12d %10.2f%n", op.label, CALLS[i].sum(), BYTES[i].sum(),
+                        NANOS[i].sum() / 1e6);
+            }
+        }
+        for (String label : new TreeSet<>(COUNTERS.keySet())) {
+            long count = COUNTERS.get(label).count.sum();
+            if (count > 0) {
+                out.printf("%-20s %8d%n", label, count);
+            }
+        }
+        out.flush();
+    }
+
+    /** Returns the counter labelled LABEL, creating it on first use. */
+    static Counter counter(String label) {
+        return COUNTERS.computeIfAbsent(label, Counter::new);
+    }
+
+    /** Returns whether the current command is traced. */
+    static boolean enabled() {
+        return enabled;
+    }
+
+    /** Returns the time at which a traced operation starts. */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Records an operation OP on BYTES bytes that started at START. */
+    static void end(Op op, long start, long bytes) {
+        if (enabled) {
+            record(op, bytes, System.nanoTime() - start);
+        }
+    }
+
+    /** Returns IN, which an operation OP started at START opened, counting the
+     * bytes read from it and the time spent reading them as part of OP until
+     * it is closed. */
+    static InputStream reading(Op op, long start, InputStream in) {
+        if (!enabled) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            private long bytes;
+            private long nanos = System.nanoTime() - start;
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                long t = System.nanoTime();
+                int b = super.read();
+                nanos += System.nanoTime() - t;
+                bytes += b >= 0 ? 1 : 0;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                long t = System.nanoTime();
+                int n = super.read(buf, off, len);
+                nanos += System.nanoTime() - t;
+                bytes += Math.max(n, 0);
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!closed) {
+                    closed = true;
+                    record(op, bytes, nanos);
+                }
+            }
+        };
+    }
+
+    /** Adds an operation OP on BYTES bytes that took NANOS nanoseconds. */
+    private static void record(Op op, long bytes, long nanos) {
+        int i = op.ordinal();
+        CALLS[i].increment();
+        BYTES[i].add(bytes);
+        NANOS[i].add(nanos);
+        if (EVENTS) {
+            OperationEvent event = new OperationEvent();
+            event.operation = op.label;
+            event.bytes = bytes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+}
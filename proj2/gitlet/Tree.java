@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Represents a gitlet tree: the snapshot of one directory, mapping the name
+ * of each file in it to the ID of its blob and the name of each subdirectory
+ * to the ID of its own tree. As in git, a commit records only the ID of the
+ * tree of the working directory, and trees are named by the SHA-1 of their
+ * contents, so an unchanged subdirectory has the same tree in every commit
+ * and is stored once. A commit writes new trees only for the directories on
+ * the paths of the files it changes.
+ * <p>
+ * Trees are stored in a binary format (see BinaryFormat): the header and the
+ * number of entries, then for each entry, in order of name, its type, name and
+ * raw object ID. Empty subdirectories are not recorded.
+ *
+ *  @author David Rambo
+ */
+public class Tree {
+    /** Leading magic number of stored trees ("GTRE"). */
+    private static final int MAGIC = 0x47545245;
+    private static final int VERSION = 1;
+    /** Entry types. */
+    private static final byte BLOB = 1;
+    private static final byte TREE = 2;
+    /** Trees loaded by this process, by ID. */
+    private static final ObjectCache<Tree> CACHE = new ObjectCache<>("trees", 4096);
+
+    /** One file or subdirectory in a tree. */
+    private static class Entry {
+        private final byte type;
+        private final ObjectId id;
+
+        Entry(byte type, ObjectId id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        boolean isTree() {
+            return type == TREE;
+        }
+    }
+
+    /** The entries of this tree by name, sorted so that a tree's encoding,
+     * and hence its ID, depends only on its contents. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** Returns an unsaved tree of the files in BLOBS <filename, blobID>, none
+     * of which may be in a subdirectory. */
+    static Tree ofBlobs(Map<String, ObjectId> blobs) {
+        Tree tree = new Tree();
+        for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+            tree.entries.put(entry.getKey(), new Entry(BLOB, entry.getValue()));
+        }
+        return tree;
+    }
+
+    /** Returns the tree with the given ID, which is shared with other
+     * callers and must not be modified. */
+    static Tree load(String treeID) {
+        return CACHE.get(treeID, id -> decode(Repository.TREE_STORE.read(id)));
+    }
+
+    /** Stores this tree, unless an identical one is already stored, and
+     * returns its ID. */
+    String save() {
+        byte[] bytes = encode();
+        String treeID = Utils.sha1(bytes);
+        if (!Repository.TREE_STORE.contains(treeID)) {
+            Repository.TREE_STORE.write(treeID, bytes);
+        }
+        return treeID;
+    }
+
+    /** Returns the ID of the tree that results from adding the files in
+     * ADDITIONS <path, blobID> to the tree TREEID (null for an empty tree) and
+     * removing the files in REMOVALS. Paths are relative to the tree's
+     * directory and separated by "/". Only the trees on the paths of changed
+     * files are read and written; every other subtree is shared. */
+    public static String update(String treeID, Map<String, ObjectId> additions,
+                                Collection<String> removals) {
+        Tree tree = apply(treeID, additions, removals);
+        return (tree == null ? new Tree() : tree).save();
+    }
+
+    /** Returns the ID of the tree holding exactly the files in BLOBS
+     * <path, blobID>. */
+    public static String write(Map<String, ObjectId> blobs) {
+        return update(null, blobs, Collections.emptyList());
+    }
+
+    /** Returns the tree TREEID (null for an empty tree) with ADDITIONS and
+     * REMOVALS applied and its changed subtrees saved, or null if it ends up
+     * empty. */
+    private static Tree apply(String treeID, Map<String, ObjectId> additions,
+                              Collection<String> removals) {
+        Tree tree = new Tree();
+        if (treeID != null) {
+            tree.entries.putAll(load(treeID).entries);
+        }
+        TreeMap<String, Map<String, ObjectId>> subAdditions = new TreeMap<>();
+        TreeMap<String, List<String>> subRemovals = new TreeMap<>();
+
+        for (String path : removals) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                Entry entry = tree.entries.get(path);
+                if (entry != null && !entry.isTree()) {
+                    tree.entries.remove(path);
+                }
+            } else {
+                subRemovals.computeIfAbsent(path.substring(0, slash), k -> new ArrayList<>())
+                        .add(path.substring(slash + 1));
+            }
+        }
+        for (Map.Entry<String, ObjectId> addition : additions.entrySet()) {
+            String path = addition.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.entries.put(path, new Entry(BLOB, addition.getValue()));
+            } else {
+                subAdditions.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), addition.getValue());
+            }
+        }
+
+        TreeSet<String> changedDirs = new TreeSet<>(subAdditions.keySet());
+        changedDirs.addAll(subRemovals.keySet());
+        for (String name : changedDirs) {
+            Entry entry = tree.entries.get(name);
+            boolean isDir = entry != null && entry.isTree();
+            if (!isDir && !subAdditions.containsKey(name)) {
+                continue;
+            }
+            Tree subtree = apply(isDir ? entry.id.toHex() : null,
+                    subAdditions.getOrDefault(name, Collections.emptyMap()),
+                    subRemovals.getOrDefault(name, Collections.emptyList()));
+            if (subtree == null) {
+                tree.entries.remove(name);
+            } else {
+                tree.entries.put(name, new Entry(TREE, ObjectId.fromHex(subtree.save())));
+            }
+        }
+        return tree.entries.isEmpty() ? null : tree;
+    }
+
+    /** Returns every file in the tree TREEID and its subtrees as a map
+     * <path, blobID>. */
+    public static HashMap<String, ObjectId> flatten(String treeID) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        flatten(treeID, "", result);
+        return result;
+    }
+
+    /** Adds the files of the tree TREEID to RESULT, with PREFIX before their
+     * names. */
+    private static void flatten(String treeID, String prefix, HashMap<String, ObjectId> result) {
+        for (Map.Entry<String, Entry> entry : load(treeID).entries.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().isTree()) {
+                flatten(entry.getValue().id.toHex(), path + "/", result);
+            } else {
+                result.put(path, entry.getValue().id);
+            }
+        }
+    }
+
+    /** Returns the IDs of the subtrees of this tree. */
+    List<String> subtreeIDs() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isTree()) {
+                result.add(entry.id.toHex());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the IDs of the blobs of the files directly in this tree. */
+    List<String> blobIDs() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isTree()) {
+                result.add(entry.id.toHex());
+            }
+        }
+        return result;
+    }
+
+    /** Adds the tree TREEID, found at the directory PATH ("" for the top),
+     * and every tree and blob under it to TREES and BLOBS, each mapped to the
+     * path it was first found at. Subtrees already in TREES are not visited
+     * again, so marking the trees of many commits that share most of their
+     * files reads each distinct tree once. */
+    static void mark(ObjectId treeID, String path, Map<ObjectId, String> trees,
+                     Map<ObjectId, String> blobs) {
+        if (trees.putIfAbsent(treeID, path) != null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> entry : load(treeID.toHex()).entries.entrySet()) {
+            String name = path.isEmpty() ? entry.getKey() : path + "/" + entry.getKey();
+            if (entry.getValue().isTree()) {
+                mark(entry.getValue().id, name, trees, blobs);
+            } else {
+                blobs.putIfAbsent(entry.getValue().id, name);
+            }
+        }
+    }
+
+    /** Returns this tree in its stored form. */
+    byte[] encode() {
+        return BinaryFormat.encode(out -> {
+            BinaryFormat.writeHeader(out, MAGIC, VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getValue().type);
+                BinaryFormat.writeString(out, entry.getKey());
+                BinaryFormat.writeID(out, entry.getValue().id);
+            }
+        });
+    }
+
+    /** Returns the tree stored as BYTES. */
+    static Tree decode(byte[] bytes) {
+        return BinaryFormat.decode(bytes, "tree", Tree::read);
+    }
+
+    /** Reads a tree in the binary format from IN. */
+    private static Tree read(ByteBuffer in) {
+        BinaryFormat.readHeader(in, MAGIC, VERSION, "tree");
+        Tree tree = new Tree();
+        for (int i = in.getInt(); i > 0; i -= 1) {
+            byte type = in.get();
+            if (type != BLOB && type != TREE) {
+                throw Utils.error("Corrupt tree.");
+            }
+            String name = BinaryFormat.readString(in);
+            tree.entries.put(name, new Entry(type, BinaryFormat.readObjectId(in)));
+        }
+        return tree;
+    }
+}
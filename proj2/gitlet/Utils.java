@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -15,7 +16,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,28 +33,72 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** Lower-case hexadecimal digits by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** A SHA-1 digest for each thread, since getting one is not cheap. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
+    /** A buffer for each thread into which sha1 encodes Strings. */
+    private static final ThreadLocal<byte[]> SHA1_BUFFER =
+        ThreadLocal.withInitial(() -> new byte[256]);
+
+    /** Returns this thread's SHA-1 digest, reset. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGEST.get();
+        md.reset();
+        return md;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        long start = Trace.start();
+        long bytes = 0;
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                bytes += ((byte[]) val).length;
+            } else if (val instanceof String) {
+                bytes += updateUTF8(md, (String) val);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        String result = sha1Hex(md.digest());
+        Trace.end(Trace.Op.SHA1, start, bytes);
+        return result;
+    }
+
+    /** Adds the UTF-8 encoding of S to MD, returning its length in bytes.
+     *  ASCII, which is all of most IDs, names and messages, is encoded into
+     *  this thread's buffer; anything else falls back to String.getBytes. */
+    private static int updateUTF8(MessageDigest md, String s) {
+        int length = s.length();
+        byte[] buf = SHA1_BUFFER.get();
+        if (buf.length < length) {
+            buf = new byte[Math.max(length, 2 * buf.length)];
+            SHA1_BUFFER.set(buf);
+        }
+        for (int i = 0; i < length; i += 1) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+                md.update(encoded);
+                return encoded.length;
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            buf[i] = (byte) c;
         }
+        md.update(buf, 0, length);
+        return length;
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -63,6 +107,59 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns whether ID is a complete SHA-1 UID in lower-case hexadecimal. */
+    static boolean isUID(String id) {
+        if (id == null || id.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UID_LENGTH; i += 1) {
+            char c = id.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the value of the lower-case hexadecimal digit C, or -1 if it
+     * is not one. */
+    static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else {
+            return -1;
+        }
+    }
+
+    /** Returns the 20 raw bytes denoted by the hexadecimal SHA-1 UID ID. */
+    static byte[] sha1Bytes(String id) {
+        if (id.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("not a full SHA-1 UID: " + id);
+        }
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = hexValue(id.charAt(2 * i));
+            int lo = hexValue(id.charAt(2 * i + 1));
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not a full SHA-1 UID: " + id);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal SHA-1 UID of the 20 raw bytes in BYTES. */
+    static String sha1Hex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -97,8 +194,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Trace.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.end(Trace.Op.READ_CONTENTS, start, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -116,6 +216,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -124,13 +226,13 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] encoded = obj instanceof byte[] ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(encoded);
+                bytes += encoded.length;
             }
             str.close();
+            Trace.end(Trace.Op.WRITE_CONTENTS, start, bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -172,7 +274,9 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
+        Trace.end(Trace.Op.LIST_FILES, start, 0);
         if (files == null) {
             return null;
         } else {
@@ -220,6 +324,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
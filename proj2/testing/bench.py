@@ -0,0 +1,325 @@
+"""Performance benchmark of gitlet commands on a generated repository.
+
+Usage: python3 bench.py [--progdir=DIR] [--files=N] [--size=BYTES]
+                        [--changes=N] [--commits=N] [--merge-every=N]
+                        [--runs=N] [--mode=daemon|main] [--report=FILE]
+                        [--compare=FILE]
+
+Generates a repository of --files files of about --size bytes each, spread
+over directories of 20, with a history of --commits commits that each change
+--changes files. Every --merge-every-th commit (0 for none) instead makes a
+topic branch with a commit, a commit on master, and then merges the branch.
+The same options always generate the same repository.
+
+Then times --runs runs each of add, commit, status, log, checkout, merge and
+find, and prints the median (p50) and 99th percentile (p99) wall time of
+each, with the number of objects the command read and wrote (counted by
+gitlet itself, see GITLET_TRACE in gitlet/Trace.java). With
+--mode=daemon, the default, commands are sent to a gitlet daemon (see
+gitlet/Daemon.java), so that JVM start-up is not part of the times; with
+--mode=main, each one runs in a new JVM, as a user would run it.
+
+--report writes the results as JSON to FILE. --compare reads such a report
+from an earlier build and prints each p50 next to the one in it.
+"""
+
+import json
+import os
+import random
+import re
+import shutil
+import socket
+import struct
+import subprocess
+import sys
+import tempfile
+import time
+from getopt import getopt, GetoptError
+
+# Seed for generated contents, so that runs are comparable.
+SEED = 61
+
+WORDS = ["commit", "blob", "branch", "merge", "split", "point", "head", "index",
+         "stage", "remove", "checkout", "reset", "log", "status", "find", "the",
+         "a", "of", "and", "to", "in", "is", "that", "for", "with", "file"]
+
+COMMANDS = ["add", "commit", "status", "log", "checkout", "merge", "find"]
+
+
+class Gitlet:
+    """Runs gitlet commands in one repository, through a daemon or a JVM each."""
+
+    def __init__(self, progdir, repo, daemon):
+        self.progdir = progdir
+        self.repo = repo
+        self.daemon = None
+        if daemon:
+            self.run("init")
+            self.daemon = subprocess.Popen(self.java("serve"), cwd=repo)
+            while not self.connect():
+                time.sleep(0.01)
+
+    def java(self, *args):
+        return ["java", "-cp", self.progdir, "gitlet.Main"] + list(args)
+
+    def connect(self):
+        sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+        try:
+            sock.connect(os.path.join(self.repo, ".gitlet", "daemon.sock"))
+            return sock
+        except OSError:
+            sock.close()
+            return None
+
+    def run(self, *args):
+        """Runs the command ARGS and returns its output."""
+        if self.daemon is None:
+            proc = subprocess.run(self.java(*args), cwd=self.repo, stdout=subprocess.PIPE,
+                                  stderr=subprocess.STDOUT, universal_newlines=True)
+            if proc.returncode != 0 or "Exception" in proc.stdout:
+                sys.exit("gitlet {} failed:\n{}".format(" ".join(args), proc.stdout))
+            return proc.stdout
+        # The protocol of gitlet/Client.java: strings as DataOutput.writeUTF.
+        request = bytearray()
+        for arg in [self.repo, len(args)] + list(args):
+            if isinstance(arg, int):
+                request += struct.pack(">i", arg)
+            else:
+                data = arg.encode("utf-8")
+                request += struct.pack(">H", len(data)) + data
+        with self.connect() as sock:
+            sock.sendall(request)
+            reply = sock.makefile("rb")
+            status = reply.read(1)[0]
+            length = struct.unpack(">i", reply.read(4))[0]
+            output = reply.read(length).decode("utf-8")
+        if status != 0:
+            sys.exit("gitlet {} failed:\n{}".format(" ".join(args), output))
+        return output
+
+    def objects(self, *args):
+        """Runs the command ARGS in a new JVM and returns the numbers of
+        objects it read and wrote."""
+        env = dict(os.environ, GITLET_TRACE="1")
+        proc = subprocess.run(self.java(*args), cwd=self.repo, env=env, stdout=subprocess.DEVNULL,
+                              stderr=subprocess.PIPE, universal_newlines=True)
+        counts = {"read": 0, "written": 0}
+        for line in proc.stderr.splitlines():
+            match = re.match(r"(\w+) (read|written)\s+(\d+)$", line)
+            if match:
+                counts[match.group(2)] += int(match.group(3))
+        return counts
+
+    def close(self):
+        if self.daemon is not None:
+            subprocess.run(self.java("serve", "--stop"), cwd=self.repo,
+                           stdout=subprocess.DEVNULL)
+            self.daemon.wait()
+            self.daemon = None
+
+
+class Generator:
+    """Writes and changes the files of a generated repository."""
+
+    def __init__(self, repo, files, size):
+        self.repo = repo
+        self.random = random.Random(SEED)
+        self.names = [os.path.join("d{:02d}".format(i // 20), "f{:04d}.txt".format(i))
+                      for i in range(files)]
+        self.size = size
+        self.edits = 0
+
+    def line(self):
+        return " ".join(self.random.choice(WORDS) for _ in range(4 + self.random.randrange(16)))
+
+    def create(self):
+        for name in self.names:
+            path = os.path.join(self.repo, name)
+            os.makedirs(os.path.dirname(path), exist_ok=True)
+            lines, length = [], 0
+            while length < self.size:
+                lines.append(self.line())
+                length += len(lines[-1]) + 1
+            self.write(name, lines)
+
+    def write(self, name, lines):
+        with open(os.path.join(self.repo, name), "w") as f:
+            f.write("\n".join(lines) + "\n")
+
+    def change(self, count, parity=None):
+        """Replaces a line of COUNT random files, only of those whose index
+        has PARITY, if it is given, and returns their names."""
+        names = self.names if parity is None else self.names[parity::2]
+        chosen = self.random.sample(names, min(count, len(names)))
+        for name in chosen:
+            with open(os.path.join(self.repo, name)) as f:
+                lines = f.read().splitlines()
+            self.edits += 1
+            lines[self.random.randrange(len(lines))] = "edit {} {}".format(self.edits, self.line())
+            self.write(name, lines)
+        return chosen
+
+
+def generate(gitlet, gen, shape):
+    """Builds the history of the generated repository, and a branch "old" at
+    its first commit."""
+    gen.create()
+    for i in range(0, len(gen.names), 100):
+        gitlet.run("add", *gen.names[i:i + 100])
+    gitlet.run("commit", "initial files")
+    gitlet.run("branch", "old")
+    for i in range(1, shape["commits"]):
+        if shape["merge_every"] and i % shape["merge_every"] == 0:
+            # Changes to disjoint files on either side, so the merge is clean.
+            topic = "topic{}".format(i)
+            gitlet.run("branch", topic)
+            gitlet.run("checkout", topic)
+            gitlet.run("add", *gen.change(shape["changes"], 0))
+            gitlet.run("commit", "commit {} on {}".format(i, topic))
+            gitlet.run("checkout", "master")
+            gitlet.run("add", *gen.change(shape["changes"], 1))
+            gitlet.run("commit", "commit {}".format(i))
+            gitlet.run("merge", topic)
+        else:
+            gitlet.run("add", *gen.change(shape["changes"]))
+            gitlet.run("commit", "commit {}".format(i))
+
+
+def timed(gitlet, *args):
+    start = time.perf_counter()
+    gitlet.run(*args)
+    return time.perf_counter() - start
+
+
+def benchmark(gitlet, gen, command, runs, changes):
+    """Returns the wall times of RUNS runs of COMMAND, each after untimed
+    commands that prepare for it, and the objects read and written by one
+    more run. Commits change CHANGES files."""
+    times = []
+    for run in range(runs + 1):
+        if command == "add":
+            args = ["add"] + gen.change(1)
+        elif command == "commit":
+            gitlet.run("add", *gen.change(changes))
+            args = ["commit", "bench commit {}".format(run)]
+        elif command == "checkout":
+            args = ["checkout", "old" if run % 2 == 0 else "master"]
+        elif command == "merge":
+            branch = "bench{}".format(run)
+            gitlet.run("branch", branch)
+            gitlet.run("checkout", branch)
+            gitlet.run("add", *gen.change(changes, 0))
+            gitlet.run("commit", "bench commit on {}".format(branch))
+            gitlet.run("checkout", "master")
+            gitlet.run("add", *gen.change(changes, 1))
+            gitlet.run("commit", "bench commit {}".format(run))
+            args = ["merge", branch]
+        elif command == "find":
+            args = ["find", "commit 1"]
+        else:
+            args = [command]
+        if run < runs:
+            times.append(timed(gitlet, *args))
+        else:
+            # In a JVM of its own, since a daemon's counts add up.
+            objects = gitlet.objects(*args)
+    if command == "checkout":
+        gitlet.run("checkout", "master")
+    return times, objects
+
+
+def percentile(times, p):
+    """Returns the nearest-rank Pth percentile of TIMES."""
+    ordered = sorted(times)
+    return ordered[max(0, -(-len(ordered) * p // 100) - 1)]
+
+
+def count_objects(repo):
+    """Returns the number of loose objects in REPO and the bytes of all."""
+    count, size = 0, 0
+    for kind in ("commits", "trees", "blobs"):
+        for dirpath, _, files in os.walk(os.path.join(repo, ".gitlet", kind)):
+            for name in files:
+                count += os.path.basename(dirpath) != "pack"
+                size += os.path.getsize(os.path.join(dirpath, name))
+    return count, size
+
+
+def main():
+    try:
+        opts, args = getopt(sys.argv[1:], "", ["progdir=", "files=", "size=", "changes=",
+                                               "commits=", "merge-every=", "runs=", "mode=",
+                                               "report=", "compare="])
+    except GetoptError:
+        sys.exit(__doc__)
+    opts = dict(opts)
+    progdir = os.path.abspath(opts.get("--progdir", ".."))
+    mode = opts.get("--mode", "daemon")
+    if args or mode not in ("daemon", "main"):
+        sys.exit(__doc__)
+    shape = {
+        "files": int(opts.get("--files", 100)),
+        "size": int(opts.get("--size", 2048)),
+        "changes": int(opts.get("--changes", 4)),
+        "commits": int(opts.get("--commits", 100)),
+        "merge_every": int(opts.get("--merge-every", 10)),
+    }
+    runs = int(opts.get("--runs", 20))
+
+    repo = tempfile.mkdtemp(prefix="gitlet-bench-")
+    gitlet = Gitlet(progdir, repo, daemon=True)
+    try:
+        gen = Generator(repo, shape["files"], shape["size"])
+        start = time.perf_counter()
+        generate(gitlet, gen, shape)
+        generated = time.perf_counter() - start
+        objects, size = count_objects(repo)
+        print("Generated {} commits, {} objects ({} bytes) in {:.1f} s".format(
+            shape["commits"], objects, size, generated))
+        if mode == "main":
+            gitlet.close()
+            gitlet = Gitlet(progdir, repo, daemon=False)
+
+        results = {}
+        for command in COMMANDS:
+            times, touched = benchmark(gitlet, gen, command, runs, shape["changes"])
+            results[command] = {
+                "runs": runs,
+                "p50_ms": round(percentile(times, 50) * 1e3, 3),
+                "p99_ms": round(percentile(times, 99) * 1e3, 3),
+                "mean_ms": round(sum(times) / len(times) * 1e3, 3),
+                "objects_read": touched["read"],
+                "objects_written": touched["written"],
+            }
+    finally:
+        gitlet.close()
+        shutil.rmtree(repo)
+
+    old = None
+    if "--compare" in opts:
+        with open(opts["--compare"]) as f:
+            old = json.load(f)["commands"]
+    print("{:<9} {:>10} {:>10} {:>8} {:>8}{}".format(
+        "command", "p50 ms", "p99 ms", "read", "written", "   old p50  ratio" if old else ""))
+    for command, r in results.items():
+        line = "{:<9} {:>10.2f} {:>10.2f} {:>8} {:>8}".format(
+            command, r["p50_ms"], r["p99_ms"], r["objects_read"], r["objects_written"])
+        if old and command in old:
+            line += " {:>10.2f} {:>6.2f}".format(old[command]["p50_ms"],
+                                                 r["p50_ms"] / old[command]["p50_ms"])
+        print(line)
+
+    if "--report" in opts:
+        report = {
+            "mode": mode,
+            "shape": shape,
+            "repository": {"objects": objects, "bytes": size, "generate_s": round(generated, 3)},
+            "commands": results,
+        }
+        with open(opts["--report"], "w") as f:
+            json.dump(report, f, indent=2)
+            f.write("\n")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,162 @@
+"""Fault-injection test of gitlet's journal (see gitlet/Journal.java).
+
+Usage: python3 crash_test.py [--progdir=DIR] [--verbose]
+
+For each scenario, builds a repository and then runs one command in copies
+of it, killing gitlet at its first write point, then its second, and so on,
+until the command completes (GITLET_CRASH_AT=N halts gitlet at its Nth write
+point). After each crash, the next gitlet command must find the repository
+either as it was before the command or as it is after the command completed.
+"""
+
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+from getopt import getopt, GetoptError
+
+CRASH_STATUS = 137
+
+# Each scenario is the commands that build the repository, and the command to
+# crash. Commands that begin with "+" write a file instead: + NAME CONTENTS.
+SCENARIOS = {
+    "commit": (
+        [["init"],
+         ["+", "a.txt", "one\n"], ["add", "a.txt"], ["commit", "one"],
+         ["+", "a.txt", "two\n"], ["+", "b.txt", "new\n"], ["add", "a.txt", "b.txt"]],
+        ["commit", "two"]),
+    "checkout": (
+        [["init"],
+         ["+", "a.txt", "one\n"], ["add", "a.txt"], ["commit", "one"],
+         ["branch", "old"],
+         ["+", "a.txt", "two\n"], ["+", "b.txt", "new\n"], ["add", "a.txt", "b.txt"],
+         ["commit", "two"]],
+        ["checkout", "old"]),
+    "merge": (
+        [["init"],
+         ["+", "a.txt", "1\n2\n3\n4\n5\n6\n7\n8\n"], ["add", "a.txt"], ["commit", "base"],
+         ["branch", "other"],
+         ["+", "a.txt", "one\n2\n3\n4\n5\n6\n7\n8\n"], ["add", "a.txt"], ["commit", "ours"],
+         ["checkout", "other"],
+         ["+", "a.txt", "1\n2\n3\n4\n5\n6\n7\neight\n"], ["+", "c.txt", "theirs\n"],
+         ["add", "a.txt", "c.txt"], ["commit", "theirs"],
+         ["checkout", "master"]],
+        ["merge", "other"]),
+    "gc": (
+        [["init"],
+         ["+", "a.txt", "one\n"], ["add", "a.txt"], ["commit", "one"],
+         ["+", "a.txt", "two\n"], ["add", "a.txt"], ["commit", "two"]],
+        ["gc"]),
+}
+
+
+def gitlet(progdir, repo, args, crash_at=None):
+    """Runs gitlet with ARGS in REPO, returning its exit status and output."""
+    env = dict(os.environ)
+    env.pop("GITLET_CRASH_AT", None)
+    if crash_at is not None:
+        env["GITLET_CRASH_AT"] = str(crash_at)
+    proc = subprocess.run(["java", "-cp", progdir, "gitlet.Main"] + args, cwd=repo,
+                          env=env, stdout=subprocess.PIPE, stderr=subprocess.STDOUT,
+                          universal_newlines=True)
+    return proc.returncode, proc.stdout
+
+
+def build(progdir, repo, commands):
+    for command in commands:
+        if command[0] == "+":
+            with open(os.path.join(repo, command[1]), "w") as f:
+                f.write(command[2])
+        else:
+            status, output = gitlet(progdir, repo, command)
+            if status != 0:
+                sys.exit("setup command {} failed:\n{}".format(command, output))
+
+
+def state(progdir, repo):
+    """Returns what gitlet reports of the repository in REPO: the branches and
+    staged files, the log's messages, and the contents of every file in the head commit.
+    Working files are not part of the state, since commands that write them
+    do not change them atomically."""
+    _, status = gitlet(progdir, repo, ["status"])
+    status = status.split("=== Modifications")[0]
+    _, log = gitlet(progdir, repo, ["log"])
+    head = log.split()[1] if log.startswith("===") else None
+    # Commit IDs and dates differ between runs of the same command.
+    log = [line for line in log.splitlines()
+           if not line.startswith("commit ") and not line.startswith("Date: ")]
+    files = {}
+    if head is not None:
+        for name in ("a.txt", "b.txt", "c.txt"):
+            path = os.path.join(repo, name)
+            if os.path.exists(path):
+                os.remove(path)
+            gitlet(progdir, repo, ["checkout", head, "--", name])
+            if os.path.exists(path):
+                with open(path) as f:
+                    files[name] = f.read()
+    return status, log, files
+
+
+def run_scenario(progdir, name, setup, command, verbose):
+    work = tempfile.mkdtemp(prefix="gitlet-crash-")
+    try:
+        base = os.path.join(work, "base")
+        os.mkdir(base)
+        build(progdir, base, setup)
+
+        repo = os.path.join(work, "before")
+        shutil.copytree(base, repo)
+        before = state(progdir, repo)
+        repo = os.path.join(work, "after")
+        shutil.copytree(base, repo)
+        gitlet(progdir, repo, command)
+        after = state(progdir, repo)
+
+        point = 1
+        while True:
+            repo = os.path.join(work, "crash{}".format(point))
+            shutil.copytree(base, repo)
+            status, output = gitlet(progdir, repo, command, crash_at=point)
+            crashed = state(progdir, repo)
+            if verbose:
+                print("{}: write point {}: {}".format(
+                    name, point, "crashed" if status == CRASH_STATUS else "completed"))
+            if crashed != before and crashed != after:
+                return ("{}: killed at write point {}, the repository is neither as "
+                        "before nor as after the command:\n{}\n{}"
+                        .format(name, point, crashed[0], "\n".join(crashed[1])))
+            shutil.rmtree(repo)
+            if status != CRASH_STATUS:
+                print("{}: consistent after a crash at each of {} write points"
+                      .format(name, point - 1))
+                return None
+            point += 1
+    finally:
+        shutil.rmtree(work)
+
+
+def main():
+    try:
+        opts, args = getopt(sys.argv[1:], "", ["progdir=", "verbose"])
+    except GetoptError:
+        sys.exit(__doc__)
+    opts = dict(opts)
+    progdir = os.path.abspath(opts.get("--progdir", ".."))
+    verbose = "--verbose" in opts
+    names = args or list(SCENARIOS)
+
+    failures = 0
+    for name in names:
+        setup, command = SCENARIOS[name]
+        error = run_scenario(progdir, name, setup, command, verbose)
+        if error is not None:
+            print(error)
+            failures += 1
+    print("Ran {} scenarios. {} passed.".format(len(names), len(names) - failures))
+    sys.exit(1 if failures else 0)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,136 @@
+"""Stress test of gitlet's repository lock (see gitlet/RepositoryLock.java).
+
+Usage: python3 lock_test.py [--progdir=DIR] [--adders=N] [--rounds=N]
+
+Each round makes a repository and N files in it, then runs gitlet add on
+each file, all at once, while status and log run alongside. Every add must
+be staged: without the lock, adds that load and save the index at the same
+time lose each other's files. Then a commit must include every file.
+
+Then each round deletes the commit graph and commit log, as in a repository
+from before they existed, and makes commits while log and global-log, which
+rebuild them, run alongside. Every commit must still be in both: a reader
+that rebuilt them from what it read before a commit must not write them
+over it.
+"""
+
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+from getopt import getopt, GetoptError
+
+
+def start(progdir, repo, args):
+    return subprocess.Popen(["java", "-cp", progdir, "gitlet.Main"] + args, cwd=repo,
+                            stdout=subprocess.PIPE, stderr=subprocess.STDOUT,
+                            universal_newlines=True)
+
+
+def gitlet(progdir, repo, args):
+    return start(progdir, repo, args).communicate()[0]
+
+
+def staged(status):
+    """Returns the files listed as staged in the output of status."""
+    section = status.split("=== Staged Files ===")[1].split("\n\n")[0]
+    return set(section.split())
+
+
+def run_round(progdir, adders):
+    repo = tempfile.mkdtemp(prefix="gitlet-lock-")
+    try:
+        gitlet(progdir, repo, ["init"])
+        names = ["f{:03d}.txt".format(i) for i in range(adders)]
+        for name in names:
+            with open(os.path.join(repo, name), "w") as f:
+                f.write(name + "\n")
+
+        procs = []
+        for i, name in enumerate(names):
+            procs.append((["add", name], start(progdir, repo, ["add", name])))
+            if i % 4 == 0:
+                procs.append((["status"], start(progdir, repo, ["status"])))
+                procs.append((["log"], start(progdir, repo, ["log"])))
+        for args, proc in procs:
+            output = proc.communicate()[0]
+            if proc.returncode != 0 or "Exception" in output:
+                return "gitlet {} failed:\n{}".format(" ".join(args), output)
+
+        missing = set(names) - staged(gitlet(progdir, repo, ["status"]))
+        if missing:
+            return "{} of {} adds were lost: {}".format(
+                len(missing), adders, ", ".join(sorted(missing)))
+        gitlet(progdir, repo, ["commit", "everything"])
+        status = gitlet(progdir, repo, ["status"])
+        untracked = status.split("=== Untracked Files ===\n")[1].split()
+        if staged(status) or untracked:
+            return "the commit left files staged or untracked:\n" + status
+        return None
+    finally:
+        shutil.rmtree(repo)
+
+
+def count_commits(log):
+    return log.count("===")
+
+
+def run_rebuild_round(progdir, commits):
+    repo = tempfile.mkdtemp(prefix="gitlet-lock-")
+    try:
+        gitlet(progdir, repo, ["init"])
+        for i in range(commits):
+            name = "c{:03d}.txt".format(i)
+            with open(os.path.join(repo, name), "w") as f:
+                f.write(name + "\n")
+            for path in ("commit-graph", "commit-log"):
+                if os.path.exists(os.path.join(repo, ".gitlet", path)):
+                    os.remove(os.path.join(repo, ".gitlet", path))
+            readers = [start(progdir, repo, [command]) for command in ("log", "global-log") * 2]
+            gitlet(progdir, repo, ["add", name])
+            gitlet(progdir, repo, ["commit", "commit {}".format(i)])
+            for proc in readers:
+                output = proc.communicate()[0]
+                if proc.returncode != 0 or "Exception" in output:
+                    return "a reader failed:\n" + output
+        for command in ("log", "global-log"):
+            found = count_commits(gitlet(progdir, repo, [command]))
+            if found != commits + 1:
+                return "{} shows {} of {} commits".format(command, found, commits + 1)
+        return None
+    finally:
+        shutil.rmtree(repo)
+
+
+def main():
+    try:
+        opts, args = getopt(sys.argv[1:], "", ["progdir=", "adders=", "rounds="])
+    except GetoptError:
+        sys.exit(__doc__)
+    opts = dict(opts)
+    progdir = os.path.abspath(opts.get("--progdir", ".."))
+    adders = int(opts.get("--adders", 24))
+    rounds = int(opts.get("--rounds", 3))
+
+    failures = 0
+    for i in range(rounds):
+        error = run_round(progdir, adders)
+        if error is not None:
+            print("round {}: {}".format(i + 1, error))
+            failures += 1
+    print("Ran {} rounds of {} concurrent adds. {} passed.".format(
+        rounds, adders, rounds - failures))
+    rebuild_failures = 0
+    for i in range(rounds):
+        error = run_rebuild_round(progdir, adders // 2)
+        if error is not None:
+            print("rebuild round {}: {}".format(i + 1, error))
+            rebuild_failures += 1
+    print("Ran {} rounds of {} commits during rebuilds. {} passed.".format(
+        rounds, adders // 2, rounds - rebuild_failures))
+    sys.exit(1 if failures or rebuild_failures else 0)
+
+
+if __name__ == "__main__":
+    main()